@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
 import org.fusesource.jansi.AnsiConsole;
 
 /**
@@ -30,17 +35,95 @@ public class App {
         this.destinationPath = this.appIO.getDirectory("Enter the backup drive or location");
         // --------------------------------------------------------------------------------
 
-        // Step 2 - Read files and folders at both the locations
-        // --------------------------------------------------------------------------------
-        FileRetrieve sourceList = new FileRetrieve(sourcePath);
-        FileRetrieve destinationList = new FileRetrieve(destinationPath);
-        // --------------------------------------------------------------------------------
-
-        // Step 3 - Find the changes at the source, and add them to a queue
+        // Step 2 - Read files and folders at both the locations, at the same time. The
+        // destination is read from its manifest, unless it has none or has to be verified
         // --------------------------------------------------------------------------------
+        Settings settings = Settings.getInstance();
         Delta delta = new Delta();
-        delta.calculate(sourceList, destinationList);
+        boolean destinationScanned = false;
+
+        FileRetrieve.markDestination(destinationPath);
+
+        if (settings.getBoolean("manifest.enabled")) {
+            Manifest manifest = Manifest.open(destinationPath);
+
+            if (!manifest.isLoaded() || settings.getBoolean("manifest.verify")) {
+                manifest.startRebuild();
+                destinationScanned = true;
+            }
+        }
+
+        // the changes recorded by a watcher of the source make its scan unnecessary
+        ChangeJournal journal = null;
+
+        if (settings.getBoolean("journal.enabled")) {
+            journal = ChangeJournal.open(sourcePath);
+
+            if (journal.isPresent() && !journal.isUsable()) {
+                this.appIO.printf("%n%n[%s] The change journal of \"%s\" cannot be used, %s",
+                        ColorText.text("INFO", Color.BRIGHT_BLUE), sourcePath, journal.problem());
+            }
+        }
+
+        String engine = settings.get("delta.engine");
+
+        if (journal != null && journal.isUsable() && !destinationScanned) {
+            FileRetrieve sourceList = new FileRetrieve(sourcePath, journal.changes());
+            FileRetrieve destinationList = new FileRetrieve(destinationPath, sourceList.relativePaths());
+
+            // Step 3 - Find the changes at the source, among the paths in the journal
+            delta.calculate(sourceList, destinationList);
+        }
+
+        else if (engine.equalsIgnoreCase("stream")) {
+            // Step 3 - Find the changes at the source while both are still being scanned
+            PathOrder order = new PathOrder();
+            FileRetrieve sourceList = new FileRetrieve(sourcePath, order);
+            FileRetrieve destinationList = new FileRetrieve(destinationPath, order);
+            delta.calculateStreaming(sourceList, destinationList, order);
+        }
+
+        else if (engine.equalsIgnoreCase("hash")) {
+            CompletableFuture<FileRetrieve> destinationScan = CompletableFuture
+                    .supplyAsync(() -> new FileRetrieve(destinationPath, false));
+            FileRetrieve sourceList = new FileRetrieve(sourcePath, false);
+            FileRetrieve destinationList = destinationScan.join();
+
+            // Step 3 - Find the changes at the source by looking up each entry at the
+            // destination
+            delta.calculateHashed(sourceList, destinationList, settings.getThreads("delta.parallelism"));
+        }
+
+        else if (engine.equalsIgnoreCase("index")) {
+            CompletableFuture<FileRetrieve> destinationScan = CompletableFuture
+                    .supplyAsync(() -> new FileRetrieve(destinationPath, new FileIndex()));
+            FileRetrieve sourceList = new FileRetrieve(sourcePath, new FileIndex());
+            FileRetrieve destinationList = destinationScan.join();
+
+            // Step 3 - Find the changes at the source, directory by directory
+            delta.calculateIndexed(sourceList, destinationList);
+        }
+
+        else {
+            CompletableFuture<FileRetrieve> destinationScan = CompletableFuture
+                    .supplyAsync(() -> new FileRetrieve(destinationPath));
+            FileRetrieve sourceList = new FileRetrieve(sourcePath);
+            FileRetrieve destinationList = destinationScan.join();
+
+            // Step 3 - Find the changes at the source, and add them to a queue
+            delta.calculate(sourceList, destinationList);
+        }
+
+        // files whose modification time changed, but not their content, are not copied
+        if (settings.getBoolean("delta.contentCompare")) {
+            new ContentCompare(sourcePath, destinationPath).filter(delta);
+        }
+
         delta.printStats();
+
+        CanonicalCache canonicalCache = CanonicalCache.getInstance();
+        this.appIO.printf("%n[%s] %d canonical paths built from cached directories, %d resolved by the file system",
+                ColorText.text("INFO", Color.BRIGHT_BLUE), canonicalCache.hits(), canonicalCache.misses());
         // --------------------------------------------------------------------------------
 
         // Step 4 - ask confirmation and then copy items from the queue to destination
@@ -49,6 +132,11 @@ public class App {
             this.appIO.printf("%n%n[%s] Backup not required. \"%s\" and \"%s\" are in sync.",
                     ColorText.text("NOTE", Color.BRIGHT_MAGENTA), sourcePath, destinationPath);
 
+            if (journal != null) {
+                journal.commit();
+            }
+
+            Manifest.close(destinationPath);
             return;
         }
         // --------------------------------------------------------------------------------
@@ -67,10 +155,31 @@ public class App {
                             ColorText.text("INFO", Color.BRIGHT_BLUE));
                     FileCopier fc = new FileCopier();
 
-                    if (fc.fileCopy(sourcePath, destinationPath, delta.sourceNewFiles)) {
+                    boolean copied;
+
+                    if (delta.sourceIndex != null) {
+                        copied = fc.fileCopy(sourcePath, destinationPath, delta.sourceIndex, delta.sourceNewEntries);
+                    }
+
+                    else {
+                        copied = fc.fileCopy(sourcePath, destinationPath, delta.sourceNewFiles);
+                    }
+
+                    if (copied) {
                         this.appIO.printf("%n%n[%s] Backup is successful%n%n",
                                 ColorText.text("DONE", Color.BRIGHT_GREEN));
                         ch = 'n';
+
+                        // the next backup reads only what changes from now on
+                        if (journal != null) {
+                            journal.commit();
+                        }
+                    }
+
+                    else {
+                        this.appIO.printf("%n%n[%s] Some items could not be copied, [5] in the menu tries them again",
+                                ColorText.text("NOTE", Color.BRIGHT_MAGENTA));
+                        ch = 'n';
                     }
                 }
 
@@ -86,9 +195,130 @@ public class App {
                         ColorText.text("INFO", Color.BRIGHT_BLUE));
             }
         }
+
+        Manifest.close(destinationPath);
         // --------------------------------------------------------------------------------
     }
 
+    /**
+     * Resume a backup that was interrupted, copying the items it had left
+     * without scanning both the locations again
+     */
+    private void resumeBackup() {
+        this.destinationPath = this.appIO.getDirectory("Enter the backup drive or location of the interrupted backup");
+        Checkpoint checkpoint = Checkpoint.open(this.destinationPath);
+
+        if (checkpoint == null || checkpoint.remaining() == 0) {
+            this.appIO.printf("%n%n[%s] There is no interrupted backup to \"%s\"",
+                    ColorText.text("NOTE", Color.BRIGHT_MAGENTA), this.destinationPath);
+            return;
+        }
+
+        this.sourcePath = checkpoint.sourceRoot();
+        this.appIO.printf("%n%n[%s] %d of the %d items of the backup of \"%s\" are left",
+                ColorText.text("INFO", Color.BRIGHT_BLUE), checkpoint.remaining(), checkpoint.size(), this.sourcePath);
+        this.appIO.printf("%n%n[%s] Resume the backup now? ", ColorText.text("QUES", Color.BRIGHT_YELLOW));
+
+        String answer = this.appIO.readLine().trim();
+
+        if (!answer.equalsIgnoreCase("y")) {
+            this.appIO.printf("%n%n[%s] Backup aborted!%n%n", ColorText.text("NOTE", Color.BRIGHT_MAGENTA));
+            return;
+        }
+
+        // a manifest the interrupted backup was rebuilding is rebuilt by the next one
+        if (Settings.getInstance().getBoolean("manifest.enabled")) {
+            Manifest manifest = Manifest.open(this.destinationPath);
+
+            if (!manifest.isLoaded()) {
+                Manifest.close(this.destinationPath);
+            }
+        }
+
+        this.appIO.printf("%n%n[%s] Resuming the backup...%n%n", ColorText.text("INFO", Color.BRIGHT_BLUE));
+        FileCopier fc = new FileCopier();
+
+        if (fc.resume(this.destinationPath, checkpoint)) {
+            this.appIO.printf("%n%n[%s] Backup is successful%n%n", ColorText.text("DONE", Color.BRIGHT_GREEN));
+        }
+
+        else {
+            this.appIO.printf("%n%n[%s] Some items could not be copied, [5] in the menu tries them again",
+                    ColorText.text("NOTE", Color.BRIGHT_MAGENTA));
+        }
+
+        Manifest.close(this.destinationPath);
+    }
+
+    /**
+     * Restore the files packed at a backup location, writing each of them as a
+     * file of its own under a directory chosen by the user
+     */
+    private void restorePacks() {
+        this.destinationPath = this.appIO.getDirectory("Enter the backup drive or location with the packed files");
+        PackStore packs = PackStore.open(this.destinationPath, Settings.getInstance().getLong("copy.packSegmentSize"));
+
+        if (packs.size() == 0) {
+            this.appIO.printf("%n%n[%s] There are no packed files at \"%s\"",
+                    ColorText.text("NOTE", Color.BRIGHT_MAGENTA), this.destinationPath);
+            return;
+        }
+
+        String targetPath = this.appIO.getDirectory("Enter the directory to restore the packed files to");
+        int restored = 0;
+
+        for (String key : packs.list()) {
+            Path target = Paths.get(targetPath, key);
+
+            try {
+                packs.restore(key, target);
+                restored++;
+            }
+
+            catch (IOException e) {
+                this.appIO.printf("%n[%s] Could not restore \"%s\" to \"%s\". %s",
+                        ColorText.text("FAIL", Color.BRIGHT_RED), key, target.toString(), e.getMessage());
+            }
+        }
+
+        this.appIO.printf("%n%n[%s] %d of the %d packed files restored to \"%s\"%n%n",
+                ColorText.text("DONE", Color.BRIGHT_GREEN), restored, packs.size(), targetPath);
+    }
+
+    /**
+     * Scrub a backup location, reading every file to find the damaged ones
+     */
+    private void scrubBackup() {
+        this.destinationPath = this.appIO.getDirectory("Enter the backup drive or location to be scrubbed");
+        new Scrubber(this.destinationPath).scrub();
+    }
+
+    /**
+     * Watch a directory for changes, until the user asks to stop
+     */
+    private void startWatch() {
+        String watchPath = this.appIO.getDirectory("Enter the directory path to be watched");
+        ChangeWatcher watcher = new ChangeWatcher(watchPath);
+
+        if (!watcher.start()) {
+            return;
+        }
+
+        Thread thread = new Thread(watcher::run, "watch " + watchPath);
+        thread.start();
+
+        this.appIO.readLine("%n%n%nPress enter to stop watching%n");
+        watcher.stop();
+
+        try {
+            thread.join();
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Tranquil menu
      */
@@ -103,6 +333,11 @@ public class App {
             this.appIO.printf("%n-----------------------");
             this.appIO.printf("%n%n[1] Start backing up");
             this.appIO.printf("%n%n[2] Configure directories to be excluded from backing up");
+            this.appIO.printf("%n%n[3] Configure settings");
+            this.appIO.printf("%n%n[4] Watch a directory for changes, to back it up without scanning");
+            this.appIO.printf("%n%n[5] Resume an interrupted backup");
+            this.appIO.printf("%n%n[6] Restore the files packed at a backup location");
+            this.appIO.printf("%n%n[7] Scrub a backup location for damaged files");
             this.appIO.printf("%n%n[0] Exit");
 
             try {
@@ -125,6 +360,43 @@ public class App {
                     }
                         break;
 
+                    // settings menu
+                    case 3: {
+                        Settings st = Settings.getInstance();
+                        st.configMenu();
+                    }
+                        break;
+
+                    // watch mode
+                    case 4: {
+                        this.startWatch();
+                    }
+                        break;
+
+                    // resume mode
+                    case 5: {
+                        this.resumeBackup();
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // restore mode
+                    case 6: {
+                        this.restorePacks();
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // scrub mode
+                    case 7: {
+                        this.scrubBackup();
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
                     // exit by changing choice
                     case 0: {
                         choice = 0;
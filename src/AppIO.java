@@ -190,7 +190,7 @@ public class AppIO {
         String path = "";
 
         try {
-            path = f.getCanonicalPath();
+            path = CanonicalCache.getInstance().resolve(f);
         }
 
         catch (IOException e) {
@@ -0,0 +1,157 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the canonical path of the most recently used directories, so that
+ * the canonical path of a file can be built as the canonical path of its
+ * directory followed by its name, instead of asking the file system to
+ * resolve every directory of the path again.
+ *
+ * A file that is itself a symbolic link is always resolved by the file system,
+ * as its canonical path is wherever the link points to. The least recently
+ * used directories are forgotten once the cache is full
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class CanonicalCache {
+    // the canonical path of the directories, by their path, least recently used
+    // first
+    private final Map<String, String> directories;
+
+    // number of directories found in the cache, or resolved by the file system
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * The instance variable containing the one and only object of CanonicalCache
+     */
+    private static CanonicalCache instanceVar = null;
+
+    /**
+     * CanonicalCache follows Singleton design pattern
+     *
+     * @return the instance of this CanonicalCache
+     */
+    public static synchronized CanonicalCache getInstance() {
+        if (instanceVar == null)
+            instanceVar = new CanonicalCache(Settings.getInstance().getInt("canonical.cacheSize"));
+
+        return instanceVar;
+    }
+
+    /**
+     * Private constructor to restrict instantiating by foreign functions
+     *
+     * @param capacity The number of directories to be remembered
+     */
+    private CanonicalCache(int capacity) {
+        int limit = Math.max(capacity, 16);
+
+        this.directories = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return this.size() > limit;
+            }
+        };
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Method to find the canonical path of a file or directory
+     *
+     * @param f The file or directory
+     * @return the canonical path
+     * @throws IOException if the file system could not resolve the path
+     */
+    public String resolve(File f) throws IOException {
+        // the scan has resolved it already
+        if (f instanceof ScannedFile) {
+            return f.getCanonicalPath();
+        }
+
+        File absolute = f.getAbsoluteFile();
+        String name = absolute.getName();
+        String parent = absolute.getParent();
+
+        if (parent == null || name.isEmpty() || name.equals(".") || name.equals("..")) {
+            this.misses.increment();
+            return absolute.getCanonicalPath();
+        }
+
+        try {
+            if (Files.isSymbolicLink(absolute.toPath())) {
+                this.misses.increment();
+                return absolute.getCanonicalPath();
+            }
+        }
+
+        catch (InvalidPathException e) {
+            this.misses.increment();
+            return absolute.getCanonicalPath();
+        }
+
+        String directory = this.directory(parent);
+
+        // roots like "/" or "D:\" already end with the separator
+        if (directory.endsWith(File.separator)) {
+            return directory + name;
+        }
+
+        return directory + File.separator + name;
+    }
+
+    /**
+     * Method to find the canonical path of a directory in the cache, resolving and
+     * adding it if it is not there
+     *
+     * @param path The path of the directory
+     * @return the canonical path of the directory
+     * @throws IOException if the file system could not resolve the path
+     */
+    private String directory(String path) throws IOException {
+        String canonical;
+
+        synchronized (this.directories) {
+            canonical = this.directories.get(path);
+        }
+
+        if (canonical != null) {
+            this.hits.increment();
+            return canonical;
+        }
+
+        this.misses.increment();
+        canonical = new File(path).getCanonicalPath();
+
+        synchronized (this.directories) {
+            this.directories.put(path, canonical);
+        }
+
+        return canonical;
+    }
+
+    /**
+     * @return the number of paths built from a cached directory
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of paths resolved by the file system
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+}
@@ -0,0 +1,471 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * The journal of the changes seen by a {@link ChangeWatcher} in a directory
+ * tree, kept in the directory "journal" in the working directory.
+ *
+ * Every time a watcher starts it begins a new session, with a random id, and
+ * numbers the records of the session 1, 2, 3... Each record holds the kind of
+ * the change and the path relative to the watched tree, and is protected by a
+ * checksum. The watcher holds a lock on the journal for as long as it runs.
+ *
+ * After every backup the session and the number of the last record taken into
+ * account are saved as the cursor of the journal. The next backup can then
+ * read only the paths recorded after the cursor, instead of scanning the whole
+ * tree, as long as nothing could have been missed in between: the watcher is
+ * still running, it is the same session as at the cursor, it was watching the
+ * whole tree already, it did not lose any event, and no directory of the tree
+ * was reached through a symbolic link, which the watcher does not follow while
+ * the scan of a backup does
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ChangeJournal {
+    public static final byte CREATE = 1;
+    public static final byte MODIFY = 2;
+    public static final byte DELETE = 3;
+
+    // some events were lost, so the changes since the cursor are not known
+    public static final byte OVERFLOW = 4;
+
+    // the watcher watches every directory of the tree
+    public static final byte READY = 5;
+
+    // a directory of the tree is reached through a symbolic link, so its changes
+    // are not seen for the rest of the session
+    public static final byte LINKED = 6;
+
+    // the first int of the journal, "TQJ1"
+    private static final int MAGIC = 0x54514a31;
+
+    // the first int of the cursor, "TQC1"
+    private static final int CURSOR_MAGIC = 0x54514331;
+
+    // the largest record, a path of at most 65535 bytes with its number and kind
+    private static final int MAX_RECORD = 8 + 1 + 2 + 65535;
+
+    // size after which a watcher starts a new session, which costs one full scan
+    private static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    private AppIO appIO;
+
+    // the watched tree
+    private String root;
+
+    private File journalFile;
+    private File lockFile;
+    private File cursorFile;
+
+    // the session of the journal, and the number of its last record
+    private long session;
+    private long sequence;
+
+    // the journal written by a watcher, and the lock held while it runs
+    private OutputStream out;
+    private long written;
+    private boolean linked;
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    // the journal read by a backup: true if the journal exists
+    private boolean present;
+
+    // why the changes since the cursor are not known, null if they are
+    private String problem;
+
+    // the number of the READY record, 0 if there is none
+    private long ready;
+
+    // the paths changed since the cursor, true for the ones created
+    private Map<String, Boolean> changes;
+
+    /**
+     * Constructor to locate the journal of a directory tree
+     *
+     * @param root The canonical path of the watched tree
+     */
+    private ChangeJournal(String root) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+
+        String name = Integer.toHexString(root.hashCode());
+        this.journalFile = new File("journal", name);
+        this.lockFile = new File("journal", name + ".lock");
+        this.cursorFile = new File("journal", name + ".cursor");
+        this.changes = new HashMap<>();
+    }
+
+    /**
+     * Method to begin a new session of the journal of a directory tree, for the
+     * watcher of the tree
+     *
+     * @param root The canonical path of the watched tree
+     * @return the journal to append the changes to
+     * @throws IOException if the journal cannot be written, or another watcher is
+     *                     running on the same tree
+     */
+    public static ChangeJournal start(String root) throws IOException {
+        ChangeJournal journal = new ChangeJournal(root);
+        journal.journalFile.getParentFile().mkdirs();
+
+        journal.lockChannel = FileChannel.open(journal.lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+
+        try {
+            journal.lock = journal.lockChannel.tryLock();
+        }
+
+        catch (OverlappingFileLockException e) {
+            journal.lock = null;
+        }
+
+        if (journal.lock == null) {
+            journal.lockChannel.close();
+            throw new IOException("\"" + root + "\" is being watched already");
+        }
+
+        journal.begin();
+        return journal;
+    }
+
+    /**
+     * Method to read the journal of a directory tree, for a backup of the tree
+     *
+     * @param root The canonical path of the watched tree
+     * @return the journal, with the changes since the last backup if they are
+     *         known
+     */
+    public static ChangeJournal open(String root) {
+        ChangeJournal journal = new ChangeJournal(root);
+        journal.present = journal.journalFile.isFile();
+
+        if (journal.present) {
+            journal.read();
+        }
+
+        return journal;
+    }
+
+    /**
+     * @return <code>true</code> if a watcher has ever kept a journal of the tree
+     */
+    public boolean isPresent() {
+        return this.present;
+    }
+
+    /**
+     * @return <code>true</code> if every change since the last backup is in the
+     *         journal
+     */
+    public boolean isUsable() {
+        return this.present && this.problem == null;
+    }
+
+    /**
+     * @return why the changes since the last backup are not known, or
+     *         {@code null} if they are
+     */
+    public String problem() {
+        return this.problem;
+    }
+
+    /**
+     * @return the paths, relative to the tree, changed since the last backup,
+     *         mapped to <code>true</code> if they were created
+     */
+    public Map<String, Boolean> changes() {
+        return this.changes;
+    }
+
+    /**
+     * Method to append a change to the journal. A journal that cannot be appended
+     * to is incomplete from there on, so its watcher has to stop
+     *
+     * @param kind The kind of the change
+     * @param key  The path relative to the watched tree, "" for the tree itself
+     * @throws IOException if the change could not be written
+     */
+    public synchronized void append(byte kind, String key) throws IOException {
+        // a journal that grew too large starts over, at the cost of one full scan
+        if (this.written > MAX_SIZE) {
+            this.out.close();
+            this.begin();
+
+            if (kind != READY) {
+                this.append(READY, "");
+            }
+
+            // the links are still there in the new session
+            if (this.linked && kind != LINKED) {
+                this.append(LINKED, "");
+            }
+        }
+
+        if (kind == LINKED) {
+            this.linked = true;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeLong(++this.sequence);
+        payload.writeByte(kind);
+        payload.writeUTF(key);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream r = new DataOutputStream(record);
+        r.writeInt(bytes.size());
+        bytes.writeTo(r);
+        r.writeLong(crc.getValue());
+
+        // the whole record in one write, so a backup never reads half of it
+        record.writeTo(this.out);
+        this.out.flush();
+        this.written += record.size();
+    }
+
+    /**
+     * Method to close the journal written by a watcher, and release its lock
+     *
+     * @throws IOException if the journal could not be closed, in which case the
+     *                     lock is released anyway
+     */
+    public synchronized void close() throws IOException {
+        try {
+            if (this.out != null) {
+                this.out.close();
+            }
+        }
+
+        // closing the channel releases the lock too
+        finally {
+            this.lockChannel.close();
+        }
+    }
+
+    /**
+     * Method to move the cursor to the last record read, once the backup has taken
+     * every change up to there into account. Nothing is saved unless the watcher
+     * was running and watching the whole tree when the journal was read
+     */
+    public void commit() {
+        if (!this.present || this.ready == 0 || !this.isWatched()) {
+            return;
+        }
+
+        File temp = new File(this.cursorFile.getPath() + ".tmp");
+
+        try {
+            try (DataOutputStream cursor = new DataOutputStream(new FileOutputStream(temp))) {
+                cursor.writeInt(CURSOR_MAGIC);
+                cursor.writeLong(this.session);
+                cursor.writeLong(this.sequence);
+            }
+
+            FileUtil.replaceAtomically(temp.toPath(), this.cursorFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the cursor of the journal of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to start a new session, with an empty journal
+     */
+    private void begin() throws IOException {
+        this.session = UUID.randomUUID().getMostSignificantBits();
+        this.sequence = 0;
+        this.out = new FileOutputStream(this.journalFile, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeUTF(this.root);
+        header.writeLong(this.session);
+
+        bytes.writeTo(this.out);
+        this.out.flush();
+        this.written = bytes.size();
+    }
+
+    /**
+     * Method to check if a watcher holds the lock of the journal
+     *
+     * @return <code>true</code> if a watcher is running on the tree
+     */
+    private boolean isWatched() {
+        if (!this.lockFile.isFile()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.lockFile.toPath(), StandardOpenOption.WRITE)) {
+            FileLock probe = channel.tryLock();
+
+            if (probe == null) {
+                return true;
+            }
+
+            probe.release();
+            return false;
+        }
+
+        // the watcher runs in this very process
+        catch (OverlappingFileLockException e) {
+            return true;
+        }
+
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to read the journal and the cursor, and collect the paths changed
+     * after the cursor
+     */
+    private void read() {
+        long[] cursor = this.readCursor();
+        boolean overflow = false;
+        boolean linked = false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.journalFile)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(this.root)) {
+                this.problem = "the journal belongs to another directory";
+                return;
+            }
+
+            this.session = in.readLong();
+
+            while (true) {
+                byte[] payload;
+                long checksum;
+
+                try {
+                    int length = in.readInt();
+
+                    if (length < 0 || length > MAX_RECORD) {
+                        this.problem = "the journal is damaged";
+                        return;
+                    }
+
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    checksum = in.readLong();
+                }
+
+                // the end of the journal, or a record still being written by the watcher
+                catch (EOFException e) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+
+                if (crc.getValue() != checksum || record.readLong() != this.sequence + 1) {
+                    this.problem = "the journal is damaged";
+                    return;
+                }
+
+                this.sequence++;
+                byte kind = record.readByte();
+                String key = record.readUTF();
+
+                if (kind == READY) {
+                    this.ready = this.sequence;
+                }
+
+                // before the cursor as well, as the link is still there
+                if (kind == LINKED) {
+                    linked = true;
+                }
+
+                if (cursor == null || this.sequence <= cursor[1]) {
+                    continue;
+                }
+
+                if (kind == OVERFLOW) {
+                    overflow = true;
+                }
+
+                else if (kind == CREATE || kind == MODIFY || kind == DELETE) {
+                    this.changes.merge(key, kind == CREATE, Boolean::logicalOr);
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.problem = "the journal could not be read";
+            return;
+        }
+
+        if (!this.isWatched()) {
+            this.problem = "its watcher is not running";
+        }
+
+        else if (this.ready == 0) {
+            this.problem = "its watcher has not finished watching every directory";
+        }
+
+        else if (cursor == null || cursor[0] != this.session || cursor[1] > this.sequence) {
+            this.problem = "its watcher was started after the last backup";
+        }
+
+        else if (linked) {
+            this.problem = "some of its directories are reached through symbolic links, which its watcher does "
+                    + "not follow";
+        }
+
+        else if (overflow) {
+            this.problem = "its watcher missed some changes";
+        }
+    }
+
+    /**
+     * Method to read the cursor saved by the last backup
+     *
+     * @return the session and the number of the last record, or {@code null} if
+     *         there is no cursor
+     */
+    private long[] readCursor() {
+        if (!this.cursorFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(this.cursorFile))) {
+            if (in.readInt() != CURSOR_MAGIC) {
+                return null;
+            }
+
+            return new long[] { in.readLong(), in.readLong() };
+        }
+
+        catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches every directory of a tree with a WatchService, and records the
+ * created, modified and deleted paths in the {@link ChangeJournal} of the
+ * tree, so that the next backup can read them instead of scanning the tree.
+ *
+ * The directories excluded from the backup are not watched. Symbolic links are
+ * not followed, while the scan of a backup follows them, so a tree with a
+ * directory reached through a link is not watched at all, and a link to a
+ * directory created while watching makes the journal unusable until the
+ * watcher is started again.
+ *
+ * While watching, nothing is written to the console, which is busy waiting for
+ * the user to stop the watch. Failures are reported once the watch is over
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ChangeWatcher {
+    private AppIO appIO;
+    private Skipper sk;
+
+    // the watched tree
+    private String root;
+
+    private WatchService watcher;
+    private ChangeJournal journal;
+
+    // the watched directories by their key
+    private Map<WatchKey, Path> directories;
+
+    // the links to directories found under the tree
+    private int links;
+
+    // set to end the watch
+    private volatile boolean stopped;
+
+    // the failures while watching, reported when the watch is over
+    private List<String> failures;
+
+    /**
+     * Constructor to initialize the object variables with default values
+     *
+     * @param root The canonical path of the tree to be watched
+     */
+    public ChangeWatcher(String root) {
+        this.appIO = AppIO.getInstance();
+        this.sk = Skipper.getInstance();
+        this.root = root;
+        this.directories = new HashMap<>();
+        this.failures = new ArrayList<>();
+    }
+
+    /**
+     * Method to start the journal and watch every directory of the tree
+     *
+     * @return <code>true</code> if the whole tree is being watched
+     */
+    public boolean start() {
+        try {
+            this.journal = ChangeJournal.start(this.root);
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not start the journal of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        this.appIO.printf("%n%n[%s] Watching the directories of \"%s\"...", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                this.root);
+
+        try {
+            this.watcher = FileSystems.getDefault().newWatchService();
+            this.watchTree(Paths.get(this.root));
+
+            if (this.links > 0) {
+                this.appIO.printf("%n%n[%s] %d directories of \"%s\" are reached through symbolic links, which "
+                        + "are not watched, so backups will scan it", ColorText.text("NOTE", Color.BRIGHT_MAGENTA),
+                        this.links, this.root);
+                this.close();
+                this.report();
+                return false;
+            }
+
+            this.journal.append(ChangeJournal.READY, "");
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not watch \"%s\", backups will scan it. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            this.close();
+            this.report();
+            return false;
+        }
+
+        this.appIO.printf("%n[%s] %d directories are being watched, the next backups of \"%s\" read the changes "
+                + "from the journal", ColorText.text("PASS", Color.BRIGHT_GREEN), this.directories.size(), this.root);
+
+        return true;
+    }
+
+    /**
+     * Method to record the changes of the tree, until {@link #stop()} is called
+     */
+    public void run() {
+        try {
+            while (!this.stopped) {
+                WatchKey key = this.watcher.poll(500, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    this.record(key);
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.failures.add("Could not record the changes of \"" + this.root + "\", backups will scan it. "
+                    + e.getMessage());
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // the journal is released first, so no backup trusts a watcher that stopped
+        finally {
+            this.close();
+            this.report();
+        }
+    }
+
+    /**
+     * Method to print the failures seen while watching
+     */
+    private void report() {
+        for (String failure : this.failures) {
+            this.appIO.printf("%n[%s] %s", ColorText.text("FAIL", Color.BRIGHT_RED), failure);
+        }
+    }
+
+    /**
+     * Method to stop watching and close the journal
+     */
+    private void close() {
+        try {
+            if (this.watcher != null) {
+                this.watcher.close();
+            }
+        }
+
+        catch (IOException e) {
+            this.failures.add("Could not stop watching \"" + this.root + "\". " + e.getMessage());
+        }
+
+        try {
+            this.journal.close();
+        }
+
+        catch (IOException e) {
+            this.failures.add("Could not close the journal of \"" + this.root + "\". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Method to end the watch
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Method to record the events of a watched directory in the journal
+     *
+     * @param key The key of the directory
+     * @throws IOException if the journal could not be written
+     */
+    private void record(WatchKey key) throws IOException {
+        Path directory = this.directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                this.journal.append(ChangeJournal.OVERFLOW, "");
+                continue;
+            }
+
+            if (directory == null) {
+                continue;
+            }
+
+            Path child = directory.resolve((Path) event.context());
+            String relative = Manifest.relativeKey(this.root, child.toString());
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                // the children of a new directory are found by the backup, but their
+                // changes from now on have to be watched
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        this.watchTree(child);
+                    }
+
+                    catch (IOException e) {
+                        this.failures.add("Could not watch \"" + child + "\". " + e.getMessage());
+                        this.journal.append(ChangeJournal.OVERFLOW, "");
+                    }
+                }
+
+                else if (this.isLinkedDirectory(child)) {
+                    this.failures.add("\"" + child + "\" is a link to a directory, which is not watched, so backups "
+                            + "will scan \"" + this.root + "\"");
+                    this.journal.append(ChangeJournal.LINKED, relative);
+                }
+
+                this.journal.append(ChangeJournal.CREATE, relative);
+            }
+
+            else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                this.journal.append(ChangeJournal.MODIFY, relative);
+            }
+
+            else {
+                this.journal.append(ChangeJournal.DELETE, relative);
+            }
+        }
+
+        // a directory that is gone cannot be watched any more
+        if (!key.reset()) {
+            this.directories.remove(key);
+        }
+    }
+
+    /**
+     * Method to watch a directory and all the directories under it, leaving out
+     * the ones never backed up
+     *
+     * @param start The directory
+     * @throws IOException if a directory cannot be watched, e.g. when the limit
+     *                     of watches of the system is reached
+     */
+    private void watchTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                Path parent = dir.getParent();
+
+                if (!dir.toString().equals(root) && parent != null && FileRetrieve.isMandatorySkip(root,
+                        parent.toString(), dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                if (sk.isExcluded(dir.toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                try {
+                    WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    directories.put(key, dir);
+                }
+
+                // neither is scanned by a backup
+                catch (NoSuchFileException | AccessDeniedException e) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isSymbolicLink() && isLinkedDirectory(file)) {
+                    links++;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Method to check if a path is a link to a directory the scan of a backup
+     * would follow
+     *
+     * @param path The path
+     * @return <code>true</code> if it is a link to a directory that is not
+     *         excluded from the backup
+     */
+    private boolean isLinkedDirectory(Path path) {
+        if (!Files.isSymbolicLink(path) || !Files.isDirectory(path)) {
+            return false;
+        }
+
+        try {
+            return !this.sk.isExcluded(path.toRealPath().toString());
+        }
+
+        // a link gone since, or one the scan cannot follow either
+        catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,802 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The plan of a backup, every item to be copied in order, and which of them
+ * have been copied so far, kept in the directory "checkpoint" in the working
+ * directory, one plan per backup location.
+ *
+ * The plan is written before the first item is copied. The numbers of the
+ * items copied are appended to the file ".done" next to it, a batch at a time,
+ * each batch protected by a checksum. A backup that was interrupted can then
+ * be resumed from the items left, without scanning both locations again.
+ * Both files are removed once every item of the plan is copied.
+ *
+ * With copy.durability=batch, the copies are synced to the disk a group at a
+ * time, with the directories holding them, before the group is written as
+ * copied. A new copy was synced already, before it was renamed over the old
+ * one, and only its name is left to sync. A group is written after
+ * copy.syncItems items, copy.syncBytes bytes or copy.syncMillis milliseconds,
+ * whichever comes first, which costs far less than syncing every directory
+ * and the progress for every copy
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class Checkpoint {
+    // the first int of the plan, "TQP1"
+    private static final int MAGIC = 0x54515031;
+
+    // the most items in a batch
+    private static final int BATCH_ITEMS = 256;
+
+    // the longest a copied item waits before its batch is written, unless the
+    // copies have to be durable
+    private static final long BATCH_MILLIS = 1000;
+
+    private AppIO appIO;
+
+    // the locations backed up from and to
+    private String sourceRoot;
+    private String destinationRoot;
+
+    private File planFile;
+    private File doneFile;
+
+    // the items of the plan, by their number
+    private List<String> sources;
+    private List<String> destinations;
+    private BitSet directories;
+
+    // the items copied, including the ones of an interrupted run
+    private BitSet done;
+
+    // the items copied and not yet written, when the first of them was, and the
+    // bytes of their copies
+    private List<Integer> batch;
+    private long batchStarted;
+    private long batchBytes;
+
+    // the number of the group being filled, counted up every time one is taken
+    private long batchNumber;
+
+    // writes a group once it has waited its longest, if no copy finishing does
+    private ScheduledThreadPoolExecutor timer;
+
+    // the files to sync for the items of the batch not copied to their
+    // destination, e.g. packed into a segment, null if nothing was written
+    private Map<Integer, Path> batchCopies;
+
+    // true if the copies are synced to the disk before they are counted as done
+    private boolean durable;
+
+    // the most items, bytes and milliseconds in a group written at once
+    private int groupItems;
+    private long groupBytes;
+    private long groupMillis;
+
+    // the done file being appended to, null until the plan is saved
+    private FileOutputStream out;
+
+    // true for the plan of an interrupted backup, read from the disk
+    private boolean resumed;
+
+    /**
+     * Constructor to begin an empty plan for a backup
+     *
+     * @param sourceRoot      The canonical path of the location backed up
+     * @param destinationRoot The canonical path of the backup location
+     */
+    public Checkpoint(String sourceRoot, String destinationRoot) {
+        this.appIO = AppIO.getInstance();
+        this.sourceRoot = sourceRoot;
+        this.destinationRoot = destinationRoot;
+
+        String name = Integer.toHexString(destinationRoot.hashCode());
+        this.planFile = new File("checkpoint", name);
+        this.doneFile = new File("checkpoint", name + ".done");
+
+        this.sources = new ArrayList<>();
+        this.destinations = new ArrayList<>();
+        this.directories = new BitSet();
+        this.done = new BitSet();
+        this.batch = new ArrayList<>();
+        this.batchCopies = new HashMap<>();
+
+        Settings settings = Settings.getInstance();
+        this.durable = settings.get("copy.durability").equalsIgnoreCase("batch");
+        this.groupItems = this.durable ? Math.max(settings.getInt("copy.syncItems"), 1) : BATCH_ITEMS;
+        this.groupBytes = this.durable ? settings.getLong("copy.syncBytes") : Long.MAX_VALUE;
+        this.groupMillis = this.durable ? settings.getLong("copy.syncMillis") : BATCH_MILLIS;
+    }
+
+    /**
+     * Method to read the plan of an interrupted backup to a location, with the
+     * items copied so far
+     *
+     * @param destinationRoot The canonical path of the backup location
+     * @return the plan, or {@code null} if there is no interrupted backup to the
+     *         location, or its plan cannot be read
+     */
+    public static Checkpoint open(String destinationRoot) {
+        Checkpoint checkpoint = new Checkpoint(null, destinationRoot);
+
+        if (!checkpoint.planFile.isFile() || !checkpoint.read()) {
+            return null;
+        }
+
+        checkpoint.readDone();
+        checkpoint.resumed = true;
+        return checkpoint;
+    }
+
+    /**
+     * Method to add an item at the end of the plan
+     *
+     * @param source      the path of the item at the source
+     * @param destination the path where it is to be copied
+     * @param directory   <code>true</code> for a directory
+     */
+    public void add(String source, String destination, boolean directory) {
+        this.directories.set(this.sources.size(), directory);
+        this.sources.add(source);
+        this.destinations.add(destination);
+    }
+
+    /**
+     * @return the canonical path of the location backed up
+     */
+    public String sourceRoot() {
+        return this.sourceRoot;
+    }
+
+    /**
+     * @return the number of items in the plan
+     */
+    public int size() {
+        return this.sources.size();
+    }
+
+    /**
+     * @return the number of items not copied yet
+     */
+    public synchronized int remaining() {
+        return this.sources.size() - this.done.cardinality();
+    }
+
+    /**
+     * @param item the number of an item
+     * @return the path of the item at the source
+     */
+    public String source(int item) {
+        return this.sources.get(item);
+    }
+
+    /**
+     * @param item the number of an item
+     * @return the path where the item is to be copied
+     */
+    public String destination(int item) {
+        return this.destinations.get(item);
+    }
+
+    /**
+     * @param item the number of an item
+     * @return <code>true</code> if the item is a directory
+     */
+    public boolean isDirectory(int item) {
+        return this.directories.get(item);
+    }
+
+    /**
+     * @param item the number of an item
+     * @return <code>true</code> if the item has been copied
+     */
+    public synchronized boolean isDone(int item) {
+        return this.done.get(item);
+    }
+
+    /**
+     * Method to save the plan, replacing the plan of any earlier backup to the
+     * same location, or to carry on with the plan of an interrupted backup. A plan
+     * that cannot be saved only means that the backup cannot be resumed
+     */
+    public synchronized void start() {
+        try {
+            this.planFile.getParentFile().mkdirs();
+
+            if (this.resumed) {
+                this.sweepParts(this);
+                this.rewriteDone();
+            }
+
+            else {
+                Checkpoint interrupted = Checkpoint.open(this.destinationRoot);
+
+                if (interrupted != null) {
+                    this.sweepParts(interrupted);
+                }
+
+                this.writePlan();
+            }
+
+            this.out = new FileOutputStream(this.doneFile, true);
+            this.startTimer();
+        }
+
+        catch (IOException e) {
+            this.out = null;
+            this.appIO.printf("%n[%s] Could not save the plan of the backup to \"%s\", it cannot be resumed if "
+                    + "interrupted. %s", ColorText.text("FAIL", Color.BRIGHT_RED), this.destinationRoot,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Method to remove the copies an interrupted backup was still writing when it
+     * stopped. They can only be in the directories of the items it had not
+     * copied, next to where those copies were going. A file of the same name at
+     * the source is a file of its own that was backed up, and is kept
+     *
+     * @param plan the plan of the interrupted backup
+     */
+    private void sweepParts(Checkpoint plan) {
+        // the directories at the destination, and the same directories at the source
+        Map<String, String> directories = new HashMap<>();
+
+        for (int item = 0; item < plan.size(); item++) {
+            if (plan.isDone(item) || plan.isDirectory(item)) {
+                continue;
+            }
+
+            File destination = new File(plan.destination(item)).getParentFile();
+            File source = new File(plan.source(item)).getParentFile();
+
+            if (destination != null && source != null) {
+                directories.putIfAbsent(destination.getPath(), source.getPath());
+            }
+        }
+
+        int removed = 0;
+        long bytes = 0;
+
+        for (Map.Entry<String, String> e : directories.entrySet()) {
+            File[] parts = new File(e.getKey()).listFiles((dir, name) -> FileTransfer.isPart(name));
+
+            if (parts == null) {
+                continue;
+            }
+
+            for (File part : parts) {
+                if (new File(e.getValue(), part.getName()).exists()) {
+                    continue;
+                }
+
+                long size = part.length();
+
+                if (part.delete()) {
+                    removed++;
+                    bytes += size;
+                }
+            }
+        }
+
+        if (removed > 0) {
+            this.appIO.printf("%n%n[%s] Removed %d unfinished copies left by the interrupted backup, %s",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), removed, FileDetails.humanReadableSize(bytes));
+        }
+    }
+
+    /**
+     * Method to mark an item as copied. Items are written a group at a time, so
+     * an interruption can lose the last few, which are copied again on resume.
+     * With copy.durability=batch the copies of a group are synced to the disk
+     * before the group is written
+     *
+     * @param item  the number of the item
+     * @param bytes the size of the copy
+     */
+    public void done(int item, long bytes) {
+        this.done(item, bytes, Paths.get(this.destinations.get(item)));
+    }
+
+    /**
+     * Method to mark an item as copied to a file other than its destination
+     *
+     * @param item  the number of the item
+     * @param bytes the size of the copy
+     * @param copy  the file holding the copy, or null if nothing was written
+     */
+    public void done(int item, long bytes, Path copy) {
+        List<Integer> group = new ArrayList<>();
+        Map<Integer, Path> copies = new HashMap<>();
+
+        synchronized (this) {
+            this.done.set(item);
+
+            if (copy == null || !copy.toString().equals(this.destinations.get(item))) {
+                copies.put(item, copy);
+            }
+
+            // without a done file to write, the item is committed to the manifest
+            // on its own
+            if (this.out == null) {
+                group.add(item);
+            }
+
+            else {
+                if (this.batch.isEmpty()) {
+                    this.batchStarted = System.currentTimeMillis();
+                    long number = this.batchNumber;
+                    this.timer.schedule(() -> this.expire(number), this.groupMillis, TimeUnit.MILLISECONDS);
+                }
+
+                this.batch.add(item);
+                this.batchBytes += bytes;
+                this.batchCopies.putAll(copies);
+
+                if (this.batch.size() < this.groupItems && this.batchBytes < this.groupBytes
+                        && System.currentTimeMillis() - this.batchStarted < this.groupMillis) {
+                    return;
+                }
+
+                copies = this.batchCopies;
+                group = this.takeBatch();
+            }
+        }
+
+        // the other workers carry on copying while this group is synced
+        this.commit(group, copies);
+    }
+
+    /**
+     * Method to write the group of items copied so far
+     */
+    public void flush() {
+        List<Integer> group;
+        Map<Integer, Path> copies;
+
+        synchronized (this) {
+            copies = this.batchCopies;
+            group = this.takeBatch();
+        }
+
+        this.commit(group, copies);
+    }
+
+    /**
+     * Method to write a group that has waited its longest, unless it was written
+     * already
+     *
+     * @param number the number of the group
+     */
+    private void expire(long number) {
+        List<Integer> group;
+        Map<Integer, Path> copies;
+
+        synchronized (this) {
+            if (number != this.batchNumber || this.batch.isEmpty()) {
+                return;
+            }
+
+            copies = this.batchCopies;
+            group = this.takeBatch();
+        }
+
+        this.commit(group, copies);
+    }
+
+    /**
+     * Method to start the thread writing the groups that waited their longest
+     */
+    private void startTimer() {
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "checkpoint " + this.destinationRoot);
+            t.setDaemon(true);
+            return t;
+        });
+
+        // a group still waiting at the end is written by finish()
+        this.timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Method to stop the thread writing the groups, once it has written the group
+     * it may be writing
+     */
+    private void stopTimer() {
+        if (this.timer == null) {
+            return;
+        }
+
+        this.timer.shutdown();
+
+        try {
+            while (!this.timer.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method to take the items copied and not yet written, leaving an empty group
+     *
+     * @return the items
+     */
+    private List<Integer> takeBatch() {
+        this.batchNumber++;
+        List<Integer> group = this.batch;
+        this.batch = new ArrayList<>();
+        this.batchCopies = new HashMap<>();
+        this.batchBytes = 0;
+        return group;
+    }
+
+    /**
+     * Method to write a group of items copied, once their copies are on the disk
+     * if the copies have to be durable. The group is written in batches of at most
+     * BATCH_ITEMS items
+     *
+     * @param group  the numbers of the items
+     * @param copies the files holding the copies not at their destination
+     */
+    private void commit(List<Integer> group, Map<Integer, Path> copies) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        if (this.durable) {
+            this.sync(group, copies);
+        }
+
+        // the manifest claims the copies once they are on the disk, and before
+        // they count as done
+        Manifest manifest = Manifest.of(this.destinationRoot);
+
+        if (manifest != null) {
+            List<String> keys = new ArrayList<>(group.size());
+
+            for (int item : group) {
+                keys.add(Manifest.relativeKey(this.destinationRoot, this.destinations.get(item)));
+            }
+
+            manifest.commit(keys, this.durable);
+        }
+
+        synchronized (this) {
+            if (this.out == null) {
+                return;
+            }
+
+            try {
+                for (int from = 0; from < group.size(); from += BATCH_ITEMS) {
+                    writeBatch(this.out, group.subList(from, Math.min(from + BATCH_ITEMS, group.size())));
+                }
+
+                this.out.flush();
+
+                if (this.durable) {
+                    this.out.getChannel().force(false);
+                }
+            }
+
+            catch (IOException e) {
+                this.appIO.printf("%n[%s] Could not save the progress of the backup to \"%s\". %s",
+                        ColorText.text("FAIL", Color.BRIGHT_RED), this.destinationRoot, e.getMessage());
+                this.close();
+            }
+        }
+    }
+
+    /**
+     * Method to sync the copies of a group of items to the disk, along with the
+     * directories holding them, so their names are on the disk too. An item whose
+     * copy cannot be synced is left out of the group, and is copied again on
+     * resume
+     *
+     * @param group  the numbers of the items, from which the ones not synced are
+     *               removed
+     * @param copies the files holding the copies not at their destination
+     */
+    private void sync(List<Integer> group, Map<Integer, Path> copies) {
+        Set<Path> synced = new HashSet<>();
+        Set<Path> failed = new HashSet<>();
+        Set<Path> directories = new HashSet<>();
+
+        for (Iterator<Integer> it = group.iterator(); it.hasNext();) {
+            int item = it.next();
+            Path copy = copies.containsKey(item) ? copies.get(item) : Paths.get(this.destinations.get(item));
+
+            // many packed items share a segment, which is synced once
+            if (copy == null || synced.contains(copy)) {
+                continue;
+            }
+
+            try {
+                if (failed.contains(copy)) {
+                    throw new IOException("The sync failed before");
+                }
+
+                FileUtil.force(copy);
+                synced.add(copy);
+            }
+
+            catch (IOException e) {
+                if (failed.add(copy)) {
+                    this.appIO.printf("%n[%s] Could not sync \"%s\" to the disk. %s",
+                            ColorText.text("FAIL", Color.BRIGHT_RED), copy.toString(), e.getMessage());
+                }
+
+                it.remove();
+
+                synchronized (this) {
+                    this.done.clear(item);
+                }
+
+                continue;
+            }
+
+            if (copy.getParent() != null) {
+                directories.add(copy.getParent());
+            }
+        }
+
+        for (Path directory : directories) {
+            try {
+                FileUtil.force(directory);
+            }
+
+            // some systems cannot open a directory, e.g. Windows, where the names are
+            // written along with the files
+            catch (IOException e) {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Method to end the backup. The plan is removed if every item is copied, and
+     * kept to resume the backup otherwise
+     */
+    public void finish() {
+        // not holding the lock, which the group being written needs
+        this.stopTimer();
+
+        synchronized (this) {
+            this.flush();
+            this.close();
+
+            if (this.remaining() == 0) {
+                this.doneFile.delete();
+                this.planFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Method to write a batch of items copied, with its checksum, in a single
+     * write
+     *
+     * @param out   the done file
+     * @param items the numbers of the items
+     * @throws IOException if the batch could not be written
+     */
+    private static void writeBatch(OutputStream out, List<Integer> items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeInt(items.size());
+
+        for (int item : items) {
+            payload.writeInt(item);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream r = new DataOutputStream(record);
+        bytes.writeTo(r);
+        r.writeLong(crc.getValue());
+
+        record.writeTo(out);
+    }
+
+    /**
+     * Method to write the items copied by an interrupted run again, in whole
+     * batches, so that a batch it left half written does not hide the batches
+     * appended after it. The new file is moved over the old one
+     */
+    private void rewriteDone() throws IOException {
+        File temp = new File(this.doneFile.getPath() + ".tmp");
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            List<Integer> items = new ArrayList<>(BATCH_ITEMS);
+
+            for (int item = this.done.nextSetBit(0); item >= 0; item = this.done.nextSetBit(item + 1)) {
+                items.add(item);
+
+                if (items.size() == BATCH_ITEMS) {
+                    writeBatch(out, items);
+                    items.clear();
+                }
+            }
+
+            if (!items.isEmpty()) {
+                writeBatch(out, items);
+            }
+        }
+
+        if (this.durable) {
+            FileUtil.force(temp.toPath());
+        }
+
+        FileUtil.replaceAtomically(temp.toPath(), this.doneFile.toPath());
+    }
+
+    /**
+     * Method to close the done file
+     */
+    private void close() {
+        try {
+            if (this.out != null) {
+                this.out.close();
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the progress of the backup to \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.destinationRoot, e.getMessage());
+        }
+
+        this.out = null;
+    }
+
+    /**
+     * Method to write the plan to a temporary file and move it over the old one
+     */
+    private void writePlan() throws IOException {
+        File temp = new File(this.planFile.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(this.destinationRoot);
+            out.writeUTF(this.sourceRoot);
+            out.writeInt(this.sources.size());
+
+            for (int i = 0; i < this.sources.size(); i++) {
+                out.writeUTF(this.sources.get(i));
+                out.writeUTF(this.destinations.get(i));
+                out.writeBoolean(this.directories.get(i));
+            }
+        }
+
+        if (this.durable) {
+            FileUtil.force(temp.toPath());
+        }
+
+        // the progress of the old plan means nothing for the new one
+        this.doneFile.delete();
+
+        FileUtil.replaceAtomically(temp.toPath(), this.planFile.toPath());
+    }
+
+    /**
+     * Method to read the plan
+     *
+     * @return <code>true</code> if the plan was read
+     */
+    private boolean read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.planFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a backup plan");
+            }
+
+            // another location whose path has the same hash
+            if (!in.readUTF().equals(this.destinationRoot)) {
+                return false;
+            }
+
+            this.sourceRoot = in.readUTF();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                this.add(in.readUTF(), in.readUTF(), in.readBoolean());
+            }
+
+            return true;
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the plan of the backup to \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.destinationRoot, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Method to read the items copied so far. Reading stops at the first batch
+     * that is not whole, whose items are then copied again
+     */
+    private void readDone() {
+        if (!this.doneFile.isFile()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.doneFile)))) {
+            while (true) {
+                byte[] payload;
+                long checksum;
+
+                try {
+                    int count = in.readInt();
+
+                    if (count < 0 || count > BATCH_ITEMS) {
+                        return;
+                    }
+
+                    payload = new byte[4 + 4 * count];
+                    ByteBuffer.wrap(payload).putInt(count);
+                    in.readFully(payload, 4, 4 * count);
+                    checksum = in.readLong();
+                }
+
+                catch (EOFException e) {
+                    return;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+
+                if (crc.getValue() != checksum) {
+                    return;
+                }
+
+                DataInputStream items = new DataInputStream(new ByteArrayInputStream(payload));
+                int count = items.readInt();
+
+                for (int i = 0; i < count; i++) {
+                    int item = items.readInt();
+
+                    if (item >= 0 && item < this.sources.size()) {
+                        this.done.set(item);
+                    }
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the progress of the backup to \"%s\", it starts over. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.destinationRoot, e.getMessage());
+            this.done.clear();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The checksums of the files of a backup location, computed while they were
+ * copied, kept in the file "checksums" in the directory ".tranquil" of the
+ * backup location.
+ *
+ * Every line of the file is the algorithm, the checksum, the size and the
+ * modification time of the copy, and its path relative to the backup location,
+ * separated by tabs. The checksums of a backup are appended as the files are
+ * copied, a line with the algorithm "-" forgets a checksum, and the last line
+ * of a path wins. A line cut short by an interruption has no line break, and
+ * is left out. The file is rewritten with one line a path when the backup ends
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ChecksumCatalog {
+    // the lines appended before they are written out
+    private static final int FLUSH_LINES = 256;
+
+    private AppIO appIO;
+
+    // the backup location
+    private String root;
+
+    private File catalogFile;
+
+    // the checksums by the relative path of the copy
+    private Map<String, Entry> entries;
+
+    // the file the lines are appended to, opened with the first one
+    private Writer out;
+    private int unflushed;
+
+    /**
+     * The checksum of the copy of a file
+     */
+    public static class Entry {
+        private final String algorithm;
+        private final String checksum;
+        private final long size;
+        private final long lastModified;
+
+        /**
+         * @param algorithm    the name of the checksum
+         * @param checksum     the checksum in hexadecimal
+         * @param size         the size of the copy
+         * @param lastModified the modification time of the copy in milliseconds
+         */
+        public Entry(String algorithm, String checksum, long size, long lastModified) {
+            this.algorithm = algorithm;
+            this.checksum = checksum;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the name of the checksum
+         */
+        public String getAlgorithm() {
+            return this.algorithm;
+        }
+
+        /**
+         * @return the checksum in hexadecimal
+         */
+        public String getChecksum() {
+            return this.checksum;
+        }
+
+        /**
+         * @return the size of the copy
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return the modification time of the copy in milliseconds
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+    }
+
+    /**
+     * Method to open the catalog of a backup location, empty if it has none yet
+     *
+     * @param root The canonical path of the backup location
+     * @return the catalog
+     */
+    public static ChecksumCatalog open(String root) {
+        ChecksumCatalog catalog = new ChecksumCatalog(root);
+        catalog.read();
+        return catalog;
+    }
+
+    /**
+     * Constructor to locate the catalog of a backup location
+     *
+     * @param root The canonical path of the backup location
+     */
+    private ChecksumCatalog(String root) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+        this.catalogFile = new File(new File(root, Manifest.DIRECTORY), "checksums");
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * @return the number of checksums
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the relative paths with a checksum, sorted
+     */
+    public synchronized List<String> list() {
+        List<String> keys = new ArrayList<>(this.entries.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * @param key the path relative to the backup location
+     * @return the checksum of the copy, or {@code null} if there is none
+     */
+    public synchronized Entry get(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Method to keep the checksum of a copy
+     *
+     * @param key   the path relative to the backup location
+     * @param entry the checksum
+     */
+    public synchronized void put(String key, Entry entry) {
+        // a line break in a name would break the line
+        if (key.indexOf('\n') >= 0) {
+            return;
+        }
+
+        this.entries.put(key, entry);
+        this.append(format(key, entry));
+    }
+
+    /**
+     * Method to forget the checksum of a copy, if there is one
+     *
+     * @param key the path relative to the backup location
+     */
+    public synchronized void remove(String key) {
+        if (this.entries.remove(key) != null) {
+            this.append(format(key, null));
+        }
+    }
+
+    /**
+     * Method to write the catalog with one line a path, over the lines appended
+     */
+    public synchronized void close() {
+        try {
+            if (this.out != null) {
+                this.out.close();
+                this.out = null;
+            }
+
+            if (this.entries.isEmpty() && !this.catalogFile.isFile()) {
+                return;
+            }
+
+            File temp = new File(this.catalogFile.getPath() + ".tmp");
+
+            try (Writer w = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+                for (String key : this.list()) {
+                    w.write(format(key, this.entries.get(key)));
+                }
+            }
+
+            FileUtil.replaceAtomically(temp.toPath(), this.catalogFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the checksums of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * @param key   the path relative to the backup location
+     * @param entry the checksum, or {@code null} to forget it
+     * @return the line of the catalog
+     */
+    private static String format(String key, Entry entry) {
+        if (entry == null) {
+            return String.format("-\t-\t0\t0\t%s\n", key);
+        }
+
+        return String.format("%s\t%s\t%d\t%d\t%s\n", entry.algorithm, entry.checksum, entry.size,
+                entry.lastModified, key);
+    }
+
+    /**
+     * Method to append a line to the catalog, opening it with the first line
+     *
+     * @param line the line
+     */
+    private void append(String line) {
+        try {
+            if (this.out == null) {
+                this.catalogFile.getParentFile().mkdirs();
+                this.out = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(this.catalogFile, true), StandardCharsets.UTF_8));
+            }
+
+            this.out.write(line);
+
+            if (++this.unflushed >= FLUSH_LINES) {
+                this.out.flush();
+                this.unflushed = 0;
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the checksums of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to read the lines of the catalog, leaving out a line without a line
+     * break at the end, or that cannot be understood
+     */
+    private void read() {
+        if (!this.catalogFile.isFile()) {
+            return;
+        }
+
+        String text;
+
+        try {
+            text = new String(Files.readAllBytes(this.catalogFile.toPath()), StandardCharsets.UTF_8);
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not read the checksums of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return;
+        }
+
+        for (int start = 0, end; (end = text.indexOf('\n', start)) >= 0; start = end + 1) {
+            String[] fields = text.substring(start, end).split("\t", 5);
+
+            if (fields.length < 5) {
+                continue;
+            }
+
+            if (fields[0].equals("-")) {
+                this.entries.remove(fields[4]);
+                continue;
+            }
+
+            try {
+                this.entries.put(fields[4],
+                        new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+            }
+
+            catch (NumberFormatException e) {
+                continue;
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes out of the delta the files whose modification time changed, but not
+ * their content, like files checked out again or touched by a build.
+ *
+ * A file in the delta that has a copy of the same size at the destination is
+ * read at both the locations, by delta.compareThreads threads, and is left out
+ * of the backup if the SHA-256 of both is the same. The copy then gets the
+ * modification time of the file, so that the next backup finds them in sync
+ * without reading either. The checksums are remembered in a HashCache, and
+ * the checksum of a copy kept with copy.hash=SHA-256 is used instead of
+ * reading the copy
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ContentCompare {
+    // a digest, as a file is left out of the backup when it matches
+    private static final String ALGORITHM = "SHA-256";
+
+    // the bytes read at a time
+    private static final int READ_SIZE = 1 << 20;
+
+    private AppIO appIO;
+
+    private String sourceRoot;
+    private String destinationRoot;
+
+    private HashCache cache;
+    private ChecksumCatalog catalog;
+    private Manifest manifest;
+    private Throttle throttle;
+
+    // the copies given a new modification time, committed to the manifest at once
+    private Queue<String> touched;
+
+    // the buffer of every thread
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(READ_SIZE));
+
+    private AtomicLong compared;
+    private AtomicLong unchanged;
+    private AtomicLong bytes;
+
+    /**
+     * Constructor to compare the files of a source with their copies
+     *
+     * @param sourceRoot      The canonical path of the source
+     * @param destinationRoot The canonical path of the backup location
+     */
+    public ContentCompare(String sourceRoot, String destinationRoot) {
+        this.appIO = AppIO.getInstance();
+        this.sourceRoot = sourceRoot;
+        this.destinationRoot = destinationRoot;
+        this.throttle = Throttle.getInstance();
+        this.compared = new AtomicLong();
+        this.unchanged = new AtomicLong();
+        this.bytes = new AtomicLong();
+        this.touched = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Method to take the files whose content is the same at both the locations
+     * out of the queue of the delta
+     *
+     * @param delta the delta, with the items to be backed up
+     */
+    public void filter(Delta delta) {
+        List<Path[]> candidates = new ArrayList<>();
+
+        for (File f : delta.sourceNewFiles) {
+            candidates.add(this.pathsOf(this.appIO.fetchCanonical(f)));
+        }
+
+        for (int k = 0; k < delta.sourceNewEntries.size(); k++) {
+            int id = delta.sourceNewEntries.get(k);
+
+            candidates.add(delta.sourceIndex.isDirectory(id) ? null
+                    : new Path[] { Paths.get(delta.sourceIndex.path(id, this.sourceRoot)),
+                            Paths.get(delta.sourceIndex.path(id, this.destinationRoot)) });
+        }
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Settings settings = Settings.getInstance();
+        this.cache = new HashCache(ALGORITHM, settings.getInt("delta.hashCacheSize"));
+        this.catalog = ChecksumCatalog.open(this.destinationRoot);
+        this.manifest = Manifest.of(this.destinationRoot);
+
+        this.appIO.printf("%n%n[%s] Comparing the content of the changed files...",
+                ColorText.text("INFO", Color.BRIGHT_BLUE));
+
+        boolean[] same = new boolean[candidates.size()];
+        int threads = settings.getThreads("delta.compareThreads");
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                for (int i = next.getAndIncrement(); i < same.length; i = next.getAndIncrement()) {
+                    Path[] paths = candidates.get(i);
+                    same[i] = paths != null && this.sameContent(paths[0], paths[1]);
+                }
+            });
+        }
+
+        workers.shutdown();
+
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // the queues again, without the files found the same
+        Queue<File> files = new LinkedList<>();
+        IdQueue entries = new IdQueue();
+        int i = 0;
+
+        for (File f : delta.sourceNewFiles) {
+            if (!same[i++]) {
+                files.add(f);
+            }
+        }
+
+        for (int k = 0; k < delta.sourceNewEntries.size(); k++) {
+            if (!same[i++]) {
+                entries.add(delta.sourceNewEntries.get(k));
+            }
+        }
+
+        delta.sourceNewFiles = files;
+        delta.sourceNewEntries = entries;
+
+        if (this.manifest != null) {
+            this.manifest.commit(this.touched, false);
+        }
+
+        this.cache.save();
+        this.catalog.close();
+
+        this.appIO.printf("%n[%s] %d of %d files compared only had their modification time changed, and are "
+                + "not copied again. %s read, %d checksums found in the cache",
+                ColorText.text("INFO", Color.BRIGHT_BLUE), this.unchanged.get(), this.compared.get(),
+                FileDetails.humanReadableSize(this.bytes.get()), this.cache.hits());
+    }
+
+    /**
+     * @param source the canonical path of an item at the source
+     * @return the paths of the item at both the locations, or {@code null} if it
+     *         is not under the source
+     */
+    private Path[] pathsOf(String source) {
+        if (!source.startsWith(this.sourceRoot)) {
+            return null;
+        }
+
+        return new Path[] { Paths.get(source),
+                Paths.get(this.destinationRoot + source.substring(this.sourceRoot.length())) };
+    }
+
+    /**
+     * Method to compare a file with its copy, and give the copy the modification
+     * time of the file if their content is the same
+     *
+     * @param sp the path of the file at the source
+     * @param dp the path of the copy at the destination
+     * @return <code>true</code> if the file need not be copied
+     */
+    private boolean sameContent(Path sp, Path dp) {
+        BasicFileAttributes sa;
+        BasicFileAttributes da;
+
+        try {
+            sa = Files.readAttributes(sp, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            da = Files.readAttributes(dp, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        // a copy that is missing or cannot be read is copied again
+        catch (IOException e) {
+            return false;
+        }
+
+        // only a changed modification time is looked into
+        if (!sa.isRegularFile() || !da.isRegularFile() || sa.size() != da.size()
+                || sa.lastModifiedTime().equals(da.lastModifiedTime())) {
+            return false;
+        }
+
+        this.compared.incrementAndGet();
+
+        String key = Manifest.relativeKey(this.destinationRoot, dp.toString());
+        String copyHash = this.catalogHash(key, da);
+
+        if (copyHash == null) {
+            copyHash = this.hash(dp, da);
+        }
+
+        if (copyHash == null || !copyHash.equals(this.hash(sp, sa))) {
+            return false;
+        }
+
+        long lastModified = sa.lastModifiedTime().toMillis();
+
+        try {
+            Files.setLastModifiedTime(dp, sa.lastModifiedTime());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not set the modification time of \"%s\", it is copied again. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), dp, e.getMessage());
+            return false;
+        }
+
+        this.cache.touch(dp, da, lastModified);
+
+        if (this.catalog.get(key) != null) {
+            this.catalog.put(key, new ChecksumCatalog.Entry(ALGORITHM, copyHash, da.size(), lastModified));
+        }
+
+        if (this.manifest != null) {
+            this.manifest.record(key, da.size(), lastModified, false);
+            this.touched.add(key);
+        }
+
+        this.unchanged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param key        the relative path of a copy
+     * @param attributes the attributes of the copy
+     * @return the SHA-256 of the copy kept when it was copied, or {@code null}
+     *         if there is none or the copy changed since
+     */
+    private String catalogHash(String key, BasicFileAttributes attributes) {
+        ChecksumCatalog.Entry entry = this.catalog.get(key);
+
+        if (entry == null || !entry.getAlgorithm().equalsIgnoreCase(ALGORITHM) || entry.getSize() != attributes.size()
+                || entry.getLastModified() != attributes.lastModifiedTime().toMillis()) {
+            return null;
+        }
+
+        return entry.getChecksum();
+    }
+
+    /**
+     * Method to find the checksum of a file in the cache, or else to read it
+     *
+     * @param path       the path of the file
+     * @param attributes the attributes of the file
+     * @return the checksum, or {@code null} if the file could not be read or
+     *         changed while it was being read
+     */
+    private String hash(Path path, BasicFileAttributes attributes) {
+        String checksum = this.cache.get(path, attributes);
+
+        if (checksum != null) {
+            return checksum;
+        }
+
+        ContentHash hash = ContentHash.of(ALGORITHM);
+        long read = System.currentTimeMillis();
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = this.buffers.get();
+
+            while (true) {
+                buffer.clear();
+
+                if (in.read(buffer) < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                this.throttle.acquireBytes(buffer.remaining());
+                this.bytes.addAndGet(buffer.remaining());
+                hash.update(buffer);
+            }
+
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+
+            if (after.size() != attributes.size() || !after.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+                return null;
+            }
+        }
+
+        catch (IOException e) {
+            return null;
+        }
+
+        this.cache.put(path, attributes, hash.hex(), read);
+        return hash.hex();
+    }
+}
@@ -0,0 +1,128 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The checksum of the bytes of a file, computed as the bytes go by. Either a
+ * message digest of the JDK, like SHA-256, or CRC32C, which is much faster
+ * but only finds accidental damage
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ContentHash {
+    // the name of the checksum, as given by the settings
+    private final String algorithm;
+
+    // one of them is used
+    private final MessageDigest digest;
+    private final Checksum checksum;
+
+    // the checksum once it is ended
+    private String hex;
+
+    /**
+     * Method to start a checksum
+     *
+     * @param algorithm "crc32c", or the name of a message digest, e.g. "SHA-256"
+     * @return the checksum, or {@code null} for "off"
+     * @throws IllegalArgumentException if the algorithm is not known
+     */
+    public static ContentHash of(String algorithm) {
+        if (algorithm == null || algorithm.isEmpty() || algorithm.equalsIgnoreCase("off")) {
+            return null;
+        }
+
+        if (algorithm.equalsIgnoreCase("crc32c")) {
+            return new ContentHash("crc32c", null, new CRC32C());
+        }
+
+        try {
+            return new ContentHash(algorithm.toUpperCase(), MessageDigest.getInstance(algorithm), null);
+        }
+
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("\"" + algorithm + "\" is not a checksum this Java knows", e);
+        }
+    }
+
+    /**
+     * @param algorithm the name of the checksum
+     * @param digest    the message digest, or {@code null}
+     * @param checksum  the checksum, or {@code null}
+     */
+    private ContentHash(String algorithm, MessageDigest digest, Checksum checksum) {
+        this.algorithm = algorithm;
+        this.digest = digest;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return a new checksum of the same algorithm
+     */
+    public ContentHash fresh() {
+        return of(this.algorithm);
+    }
+
+    /**
+     * @return the name of the checksum
+     */
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Method to add the bytes of a buffer, from its position to its limit, which
+     * are left as they were
+     *
+     * @param buffer the buffer
+     */
+    public void update(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate();
+
+        if (this.digest != null) {
+            this.digest.update(bytes);
+        }
+
+        else {
+            this.checksum.update(bytes);
+        }
+    }
+
+    /**
+     * Method to add some bytes
+     *
+     * @param bytes the bytes
+     */
+    public void update(byte[] bytes) {
+        this.update(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Method to end the checksum, after which no more bytes may be added
+     *
+     * @return the checksum in hexadecimal
+     */
+    public String hex() {
+        if (this.hex != null) {
+            return this.hex;
+        }
+
+        if (this.digest == null) {
+            this.hex = String.format("%08x", this.checksum.getValue());
+            return this.hex;
+        }
+
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b : this.digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+
+        this.hex = hex.toString();
+        return this.hex;
+    }
+}
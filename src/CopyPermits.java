@@ -0,0 +1,119 @@
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the reads from the source and the writes to the backup location going
+ * on at the same time, copy.readers and copy.writers, each on its own. A permit
+ * is held only while a block is read or written, so a copy waiting to write
+ * does not keep another from reading. Reading a copy back, or comparing it
+ * with its file, counts as writing, as it keeps the backup location busy all
+ * the same
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class CopyPermits {
+    /**
+     * No limits, for a backup copying one item at a time
+     */
+    public static final CopyPermits NONE = new CopyPermits(0, 0);
+
+    // the permits, null for no limit
+    private final Semaphore reads;
+    private final Semaphore writes;
+
+    /**
+     * A permit being held, given back when closed, in the finally block of the
+     * read or write it was taken for
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * @param readers the reads at the same time, 0 for no limit
+     * @param writers the writes at the same time, 0 for no limit
+     */
+    public CopyPermits(int readers, int writers) {
+        this.reads = readers > 0 ? new Semaphore(readers) : null;
+        this.writes = writers > 0 ? new Semaphore(writers) : null;
+    }
+
+    /**
+     * Method to wait until a block may be read from the source
+     *
+     * @return the permit, to be closed once the block is read
+     * @throws InterruptedIOException if the copy was stopped while waiting
+     */
+    public Permit reading() throws InterruptedIOException {
+        return take(this.reads, null);
+    }
+
+    /**
+     * Method to wait until a block may be written to the backup location
+     *
+     * @return the permit, to be closed once the block is written
+     * @throws InterruptedIOException if the copy was stopped while waiting
+     */
+    public Permit writing() throws InterruptedIOException {
+        return take(this.writes, null);
+    }
+
+    /**
+     * Method to wait until a block may be read and written in one step, as by
+     * transferTo. The read permit is always taken first, so two copies cannot
+     * wait for each other
+     *
+     * @return the permits, to be closed once the block is moved
+     * @throws InterruptedIOException if the copy was stopped while waiting
+     */
+    public Permit readingAndWriting() throws InterruptedIOException {
+        return take(this.reads, this.writes);
+    }
+
+    /**
+     * @param first  the first permit to take, or {@code null}
+     * @param second the second permit to take, or {@code null}
+     * @return the permits taken
+     * @throws InterruptedIOException if the copy was stopped while waiting
+     */
+    private static Permit take(Semaphore first, Semaphore second) throws InterruptedIOException {
+        try {
+            if (first != null) {
+                first.acquire();
+            }
+
+            try {
+                if (second != null) {
+                    second.acquire();
+                }
+            }
+
+            catch (InterruptedException e) {
+                release(first);
+                throw e;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The copy was interrupted");
+        }
+
+        return () -> {
+            release(second);
+            release(first);
+        };
+    }
+
+    /**
+     * @param permits the permits to give a permit back to, or {@code null}
+     */
+    private static void release(Semaphore permits) {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
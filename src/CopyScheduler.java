@@ -0,0 +1,298 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Decides the order in which the files of a backup are copied, and by whom.
+ *
+ * The files are put in three lanes by their size, small, medium and huge, and
+ * every lane has workers of its own, copy.smallThreads, copy.mediumThreads and
+ * copy.hugeThreads, so that a huge file being copied does not hold up the
+ * thousands of small files after it. A worker whose lane is empty helps the
+ * lanes of smaller files, never of larger ones.
+ *
+ * Within a lane the files are copied in the order of copy.order. path = the
+ * order of the delta, newest = the most recently modified first, so that an
+ * interrupted backup has the freshest files, locality = directory by
+ * directory, and within a directory in the order of their inodes, which is
+ * roughly where they are on a spinning disk.
+ *
+ * With threads.mode=virtual every file is copied on a virtual thread of its
+ * own instead, threads.virtualLimit of them at the same time
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class CopyScheduler {
+    private static final int SMALL = 0;
+    private static final int MEDIUM = 1;
+    private static final int HUGE = 2;
+
+    // the plan of the backup, with the paths of the items
+    private Checkpoint checkpoint;
+
+    private String order;
+
+    // the largest small file, and the smallest huge file
+    private long smallMaxSize;
+    private long hugeMinSize;
+
+    // the workers of every lane
+    private int[] threads;
+
+    // the files to be copied, in the order they were added
+    private List<Entry> entries;
+
+    /**
+     * Constructor to read the lanes and the order from the settings
+     *
+     * @param checkpoint the plan of the backup
+     */
+    public CopyScheduler(Checkpoint checkpoint) {
+        Settings settings = Settings.getInstance();
+
+        this.checkpoint = checkpoint;
+        this.order = settings.get("copy.order").toLowerCase();
+        this.smallMaxSize = settings.getLong("copy.smallMaxSize");
+        this.hugeMinSize = Math.max(settings.getLong("copy.hugeMinSize"), this.smallMaxSize + 1);
+        this.threads = new int[] { settings.getThreads("copy.smallThreads"),
+                settings.getThreads("copy.mediumThreads"), settings.getThreads("copy.hugeThreads") };
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * Method to add a file of the plan to be copied, looking up what the order
+     * and the lanes need to know of it
+     *
+     * @param item the number of the item in the plan
+     */
+    public void add(int item) {
+        Path sp = Paths.get(this.checkpoint.source(item));
+        Entry e = new Entry(item);
+
+        try {
+            if (this.order.equals("locality")) {
+                e.directory = this.directoryOf(item);
+                Map<String, Object> attributes = readUnixAttributes(sp);
+
+                if (attributes != null) {
+                    e.size = (Long) attributes.get("size");
+                    e.modified = ((FileTime) attributes.get("lastModifiedTime")).toMillis();
+                    e.inode = (Long) attributes.get("ino");
+                    this.entries.add(e);
+                    return;
+                }
+            }
+
+            BasicFileAttributes attributes = Files.readAttributes(sp, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            e.size = attributes.size();
+            e.modified = attributes.lastModifiedTime().toMillis();
+        }
+
+        // the copy finds out what is wrong with the file
+        catch (IOException | RuntimeException ex) {
+            e.size = 0;
+        }
+
+        this.entries.add(e);
+    }
+
+    /**
+     * Method to read the attributes of a file with its inode, where the file
+     * system has inodes
+     *
+     * @param sp the path of the file
+     * @return the attributes, or {@code null} if there are no inodes
+     * @throws IOException if the file could not be read
+     */
+    private static Map<String, Object> readUnixAttributes(Path sp) throws IOException {
+        try {
+            return Files.readAttributes(sp, "unix:size,lastModifiedTime,ino", LinkOption.NOFOLLOW_LINKS);
+        }
+
+        catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of workers of all the lanes together
+     */
+    public int threads() {
+        return this.threads[SMALL] + this.threads[MEDIUM] + this.threads[HUGE];
+    }
+
+    /**
+     * @return the files to be copied one at a time, in the order of copy.order
+     */
+    public int[] ordered() {
+        return this.sorted(this.entries).stream().mapToInt(e -> e.item).toArray();
+    }
+
+    /**
+     * Method to start the workers of every lane, which copy the files until all
+     * the lanes are empty. The workers are done when the executor terminates
+     *
+     * @param executor the executor to run the workers on, with at least
+     *                 threads() threads
+     * @param copy     copies an item of the plan
+     */
+    public void run(ExecutorService executor, IntConsumer copy) {
+        List<List<Entry>> lanes = this.lanes();
+        int[][] items = new int[lanes.size()][];
+        AtomicInteger[] next = new AtomicInteger[lanes.size()];
+
+        for (int lane = SMALL; lane <= HUGE; lane++) {
+            items[lane] = this.sorted(lanes.get(lane)).stream().mapToInt(e -> e.item).toArray();
+            next[lane] = new AtomicInteger();
+        }
+
+        for (int lane = SMALL; lane <= HUGE; lane++) {
+            int own = lane;
+
+            for (int t = 0; t < this.threads[lane]; t++) {
+                executor.execute(() -> {
+                    // the own lane first, then the smaller files
+                    for (int l = own; l >= SMALL; l--) {
+                        for (int i = next[l].getAndIncrement(); i < items[l].length; i = next[l].getAndIncrement()) {
+                            copy.accept(items[l][i]);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Method to start a task for every file, for an executor that starts a
+     * virtual thread per task. The small files are started first, then the
+     * medium and the huge ones, each lane in the order of copy.order. At most
+     * limit files are copied at the same time, and the next one is started only
+     * once one of them is done
+     *
+     * @param executor the executor to run the tasks on
+     * @param copy     copies an item of the plan
+     * @param limit    the most files copied at the same time
+     */
+    public void runEach(ExecutorService executor, IntConsumer copy, int limit) {
+        Semaphore copies = new Semaphore(Math.max(limit, 1));
+
+        for (List<Entry> lane : this.lanes()) {
+            for (Entry e : this.sorted(lane)) {
+                try {
+                    copies.acquire();
+                }
+
+                // the backup is being stopped, the files not started are left
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                executor.execute(() -> {
+                    try {
+                        copy.accept(e.item);
+                    }
+
+                    finally {
+                        copies.release();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return the files to be copied in their lanes, smallest first, in the order
+     *         they were added
+     */
+    private List<List<Entry>> lanes() {
+        List<List<Entry>> lanes = new ArrayList<>();
+
+        for (int lane = SMALL; lane <= HUGE; lane++) {
+            lanes.add(new ArrayList<>());
+        }
+
+        for (Entry e : this.entries) {
+            lanes.get(this.laneOf(e.size)).add(e);
+        }
+
+        return lanes;
+    }
+
+    /**
+     * @param size the size of a file
+     * @return the lane of the file
+     */
+    private int laneOf(long size) {
+        if (size <= this.smallMaxSize) {
+            return SMALL;
+        }
+
+        return size < this.hugeMinSize ? MEDIUM : HUGE;
+    }
+
+    /**
+     * Method to sort files in the order of copy.order, the order of the delta
+     * being kept among files that are equal in that order
+     *
+     * @param entries the files in the order they were added
+     * @return the files in the order they are to be copied
+     */
+    private List<Entry> sorted(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+
+        if (this.order.equals("newest")) {
+            sorted.sort(Comparator.comparingLong((Entry e) -> e.modified).reversed());
+        }
+
+        else if (this.order.equals("locality")) {
+            sorted.sort(Comparator.comparing((Entry e) -> e.directory).thenComparingLong(e -> e.inode));
+        }
+
+        return sorted;
+    }
+
+    /**
+     * @param item the number of an item in the plan
+     * @return the directory of the item at the source
+     */
+    private String directoryOf(int item) {
+        String source = this.checkpoint.source(item);
+        int end = source.lastIndexOf(File.separatorChar);
+        return end < 0 ? "" : source.substring(0, end);
+    }
+
+    /**
+     * A file to be copied, with what the order and the lanes need to know of it
+     */
+    private static class Entry {
+        private final int item;
+        private long size;
+        private long modified;
+        private long inode;
+        private String directory;
+
+        /**
+         * @param item the number of the item in the plan
+         */
+        private Entry(int item) {
+            this.item = item;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 import java.io.*;
+import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * Class to find the differences in the files and directories from two location
@@ -13,12 +18,19 @@ public class Delta {
     private AppIO appIO;
     public Queue<File> sourceNewFiles;
 
+    // when the compact index is used, the source index and the ids of its entries
+    // to be backed up
+    public FileIndex sourceIndex;
+    public IdQueue sourceNewEntries;
+    private String sourceBasePath;
+
     /**
      * Default constructor to initialize the object variables with default values
      */
     public Delta() {
         this.appIO = AppIO.getInstance();
         this.sourceNewFiles = new LinkedList<>();
+        this.sourceNewEntries = new IdQueue();
     }
 
     /**
@@ -43,11 +55,15 @@ public class Delta {
                     break;
                 }
 
-                // fetch a file from sourceFiles
-                src = new FileDetails(sourceFiles.allFiles.get(i), sourceFiles.basePath);
+                // fetch a file from sourceFiles, unless it is still the one compared last
+                if (src == null) {
+                    src = new FileDetails(sourceFiles.allFiles.get(i), sourceFiles.basePath);
+                }
 
-                // fetch a file from destinationFiles
-                dst = new FileDetails(destinationFiles.allFiles.get(j), destinationFiles.basePath);
+                // fetch a file from destinationFiles, unless it is still the one compared last
+                if (dst == null) {
+                    dst = new FileDetails(destinationFiles.allFiles.get(j), destinationFiles.basePath);
+                }
 
                 // this.appIO.printf("%n%s compared with %s -> %d%n", src.fullPath,
                 // dst.fullPath, src.compareTo(dst));
@@ -60,6 +76,7 @@ public class Delta {
                         this.appIO.printf("%n[%s] Item added to queue for creation - %s",
                                 ColorText.text("INFO", Color.BRIGHT_BLUE), src.fullPath);
                         i++;
+                        src = null;
                     }
                         break;
 
@@ -69,27 +86,34 @@ public class Delta {
                         this.appIO.printf("%n[%s] Item added to queue for updation - %s",
                                 ColorText.text("INFO", Color.BRIGHT_BLUE), src.fullPath);
                         i++;
+                        src = null;
                         j++;
+                        dst = null;
                     }
                         break;
 
                     // file/directory synced
                     case 500: {
                         i++;
+                        src = null;
                         j++;
+                        dst = null;
                     }
                         break;
 
                     // destination is newer copy (dont do anything)
                     case 800: {
                         i++;
+                        src = null;
                         j++;
+                        dst = null;
                     }
                         break;
 
                     // extra file/directory present in the destination
                     case 900: {
                         j++;
+                        dst = null;
                     }
                         break;
                 }
@@ -110,12 +134,346 @@ public class Delta {
         }
     }
 
+    /**
+     * Method to compare the differences in the files/directories in the two
+     * locations supplied as parameter, while they are still being scanned. Both
+     * the FileRetrieve objects must be streamed retrievals in the order given by
+     * the parameter order, so that a single pass over both, like the merge step of
+     * merge sort, finds the actionable differences without holding any of the two
+     * complete lists in memory
+     *
+     * @param sourceFiles      a streamed FileRetrieve of the source
+     * @param destinationFiles a streamed FileRetrieve of the destination
+     * @param order            the order of the relative paths in both the streams
+     */
+    public void calculateStreaming(FileRetrieve sourceFiles, FileRetrieve destinationFiles,
+            Comparator<String> order) {
+        try {
+            File s = sourceFiles.next();
+            File d = destinationFiles.next();
+            FileDetails src = (s == null) ? null : new FileDetails(s, sourceFiles.basePath);
+            FileDetails dst = (d == null) ? null : new FileDetails(d, destinationFiles.basePath);
+            this.appIO.printf("%n");
+
+            // keep comparing until there exists files/directories at both the locations,
+            // fetching the next entry of a stream only when its cursor advances
+            while (src != null && dst != null) {
+                int comparison = src.compareTo(dst, order);
+
+                switch (comparison) {
+                    // file/directory missing from destination
+                    case 100: {
+                        this.sourceNewFiles.add(s);
+                        this.appIO.printf("%n[%s] Item added to queue for creation - %s",
+                                ColorText.text("INFO", Color.BRIGHT_BLUE), src.fullPath);
+                    }
+                        break;
+
+                    // file/directory at destination is old copy
+                    case 200: {
+                        this.sourceNewFiles.add(s);
+                        this.appIO.printf("%n[%s] Item added to queue for updation - %s",
+                                ColorText.text("INFO", Color.BRIGHT_BLUE), src.fullPath);
+                    }
+                        break;
+                }
+
+                // advance the source cursor unless the item is extra in destination
+                if (comparison != 900) {
+                    s = sourceFiles.next();
+                    src = (s == null) ? null : new FileDetails(s, sourceFiles.basePath);
+                }
+
+                // advance the destination cursor unless the item is missing from it
+                if (comparison != 100) {
+                    d = destinationFiles.next();
+                    dst = (d == null) ? null : new FileDetails(d, destinationFiles.basePath);
+                }
+            }
+
+            // above loop will break when there's nothing to compare in destination
+            while (s != null) {
+                this.sourceNewFiles.add(s);
+                this.appIO.printf("%n[%s] Item added to queue for creation - %s",
+                        ColorText.text("INFO", Color.BRIGHT_BLUE), s.getAbsolutePath());
+                s = sourceFiles.next();
+            }
+        }
+
+        catch (Exception e) {
+            this.appIO.printf("%n%n[%s] An exception has occurred", ColorText.text("FAIL", Color.BRIGHT_RED));
+            e.printStackTrace();
+        }
+
+        finally {
+            // whatever remains in the destination is extra, no need to scan it further
+            sourceFiles.close();
+            destinationFiles.close();
+        }
+    }
+
+    /**
+     * Method to compare the differences in the files/directories in the two
+     * locations supplied as parameter, without needing any of the two lists to be
+     * sorted. The destination entries are put in a hash table by their relative
+     * path, and every source entry is looked up in it, with the source split
+     * across the threads of a pool. The actionable differences are stored in
+     * sourceNewFiles in the order of the source list, where every directory comes
+     * before its children
+     *
+     * @param sourceFiles      an object of type FileRetrieve
+     * @param destinationFiles an object of type FileRetrieve
+     * @param parallelism      the number of threads looking up the source entries
+     */
+    public void calculateHashed(FileRetrieve sourceFiles, FileRetrieve destinationFiles, int parallelism) {
+        ForkJoinPool pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            List<File> source = sourceFiles.allFiles;
+            List<File> destination = destinationFiles.allFiles;
+
+            // build side, the details of every destination entry keyed by relative path
+            FileDetails[] details = new FileDetails[destination.size()];
+            String[] keys = new String[details.length];
+            this.forEach(pool, details.length, j -> {
+                details[j] = new FileDetails(destination.get(j), destinationFiles.basePath);
+                keys[j] = details[j].key();
+            });
+            PathTable table = new PathTable(keys);
+
+            // probe side, the result of the comparison of every source entry
+            int[] results = new int[source.size()];
+            this.forEach(pool, results.length, i -> {
+                FileDetails src = new FileDetails(source.get(i), sourceFiles.basePath);
+                int j = table.find(src.key());
+                results[i] = (j < 0) ? 100 : src.compareTo(details[j]);
+            });
+
+            this.appIO.printf("%n");
+
+            for (int i = 0; i < results.length; i++) {
+                switch (results[i]) {
+                    // file/directory missing from destination
+                    case 100: {
+                        this.sourceNewFiles.add(source.get(i));
+                        this.appIO.printf("%n[%s] Item added to queue for creation - %s",
+                                ColorText.text("INFO", Color.BRIGHT_BLUE), source.get(i).getAbsolutePath());
+                    }
+                        break;
+
+                    // file/directory at destination is old copy
+                    case 200: {
+                        this.sourceNewFiles.add(source.get(i));
+                        this.appIO.printf("%n[%s] Item added to queue for updation - %s",
+                                ColorText.text("INFO", Color.BRIGHT_BLUE), source.get(i).getAbsolutePath());
+                    }
+                        break;
+                }
+            }
+        }
+
+        catch (Exception e) {
+            this.appIO.printf("%n%n[%s] An exception has occurred", ColorText.text("FAIL", Color.BRIGHT_RED));
+            e.printStackTrace();
+        }
+
+        finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Method to run an action for every position from 0 to count, on the pool if
+     * there is one, or on this thread otherwise
+     *
+     * @param pool   the pool, or {@code null}
+     * @param count  the number of positions
+     * @param action the action to be run for every position
+     */
+    private void forEach(ForkJoinPool pool, int count, IntConsumer action) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        }
+
+        else {
+            pool.invoke(new RangeTask(0, count, action));
+        }
+    }
+
+    /**
+     * Task to run an action over a range of positions, split in halves until the
+     * ranges are small enough, so that idle workers can steal the pending halves
+     */
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // the ranges not split further
+        private static final int THRESHOLD = 1024;
+
+        private int from;
+        private int to;
+        private IntConsumer action;
+
+        RangeTask(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.action.accept(i);
+                }
+            }
+
+            else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new RangeTask(this.from, middle, this.action), new RangeTask(middle, this.to, this.action));
+            }
+        }
+    }
+
+    /**
+     * Method to compare the differences in the files/directories of the two
+     * compact indexes supplied as parameter, and store the ids of the actionable
+     * source entries in the object variable sourceNewEntries.
+     *
+     * Both the indexes keep the children of a directory sorted by name, so the
+     * children of matching directories are merged directory by directory,
+     * without building a path or an object for any entry
+     *
+     * @param sourceFiles      an object of type FileRetrieve, retrieved into an
+     *                         index
+     * @param destinationFiles an object of type FileRetrieve, retrieved into an
+     *                         index
+     */
+    public void calculateIndexed(FileRetrieve sourceFiles, FileRetrieve destinationFiles) {
+        try {
+            this.sourceIndex = sourceFiles.index;
+            this.sourceBasePath = sourceFiles.basePath;
+            this.appIO.printf("%n");
+            this.mergeDirectory(sourceFiles.index, FileIndex.ROOT, destinationFiles.index, FileIndex.ROOT);
+        }
+
+        catch (Exception e) {
+            this.appIO.printf("%n%n[%s] An exception has occurred", ColorText.text("FAIL", Color.BRIGHT_RED));
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method to merge the children of a source directory with the children of the
+     * matching destination directory, going down into the matching child
+     * directories
+     *
+     * @param src    the source index
+     * @param srcDir the id of the directory in the source index
+     * @param dst    the destination index
+     * @param dstDir the id of the matching directory in the destination index
+     */
+    private void mergeDirectory(FileIndex src, int srcDir, FileIndex dst, int dstDir) {
+        int i = src.childStart(srcDir);
+        int iEnd = i + src.childCount(srcDir);
+        int j = dst.childStart(dstDir);
+        int jEnd = j + dst.childCount(dstDir);
+
+        while (i < iEnd) {
+            // nothing left to compare with in the destination
+            if (j == jEnd) {
+                this.addSubtree(src, i, "creation");
+                i++;
+                continue;
+            }
+
+            int comparison = src.compareName(i, dst, j);
+
+            // file/directory missing from destination
+            if (comparison < 0) {
+                this.addSubtree(src, i, "creation");
+                i++;
+            }
+
+            // extra file/directory present in the destination
+            else if (comparison > 0) {
+                j++;
+            }
+
+            // names match, both directories are compared by their children
+            else if (src.isDirectory(i) && dst.isDirectory(j)) {
+                this.mergeDirectory(src, i, dst, j);
+                i++;
+                j++;
+            }
+
+            else {
+                // file/directory at destination is old copy
+                if (src.lastModified(i) > dst.lastModified(j)) {
+                    this.addEntry(src, i, "updation");
+                }
+
+                // a source directory in place of a destination file has nothing inside
+                // it at the destination
+                if (src.isDirectory(i)) {
+                    int start = src.childStart(i);
+
+                    for (int k = start; k < start + src.childCount(i); k++) {
+                        this.addSubtree(src, k, "creation");
+                    }
+                }
+
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Method to add an entry of the source index, and everything under it, to the
+     * queue of entries to be backed up. A directory is always added before its
+     * children
+     *
+     * @param src    the source index
+     * @param id     the id of the entry
+     * @param reason "creation" or "updation", for the message
+     */
+    private void addSubtree(FileIndex src, int id, String reason) {
+        this.addEntry(src, id, reason);
+
+        if (src.isDirectory(id)) {
+            int start = src.childStart(id);
+
+            for (int k = start; k < start + src.childCount(id); k++) {
+                this.addSubtree(src, k, reason);
+            }
+        }
+    }
+
+    /**
+     * Method to add a single entry of the source index to the queue of entries to
+     * be backed up
+     *
+     * @param src    the source index
+     * @param id     the id of the entry
+     * @param reason "creation" or "updation", for the message
+     */
+    private void addEntry(FileIndex src, int id, String reason) {
+        this.sourceNewEntries.add(id);
+        this.appIO.printf("%n[%s] Item added to queue for %s - %s", ColorText.text("INFO", Color.BRIGHT_BLUE), reason,
+                src.path(id, this.sourceBasePath));
+    }
+
     /**
      * Method to print the statistics, how many items need to be backed up and their
      * cumulative size
      */
     public void printStats() {
-        int queueSize = this.sourceNewFiles.size();
+        int queueSize = this.sourceNewFiles.size() + this.sourceNewEntries.size();
         this.appIO.printf("%n%n[%s] Total items in queue for backup = %d", ColorText.text("NOTE", Color.BRIGHT_MAGENTA),
                 queueSize);
 
@@ -127,6 +485,10 @@ public class Delta {
             totalSize = totalSize + aq.length();
         }
 
+        for (int k = 0; k < this.sourceNewEntries.size(); k++) {
+            totalSize = totalSize + this.sourceIndex.length(this.sourceNewEntries.get(k));
+        }
+
         // convert size of queue in readable format
         double s = (double) totalSize;
 
@@ -165,7 +527,7 @@ public class Delta {
      * @return <code>true</code> if backup is required, <code>false</code> otherwise
      */
     public boolean backupRequired() {
-        if (this.sourceNewFiles.size() == 0) {
+        if (this.sourceNewFiles.size() == 0 && this.sourceNewEntries.size() == 0) {
             return false;
         }
 
@@ -4,8 +4,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 
 /**
@@ -18,7 +23,40 @@ import java.util.regex.Matcher;
  */
 public class FileCopier {
     private AppIO appIO;
-    private boolean backupStatus;
+    private volatile boolean backupStatus;
+
+    // the backup location being written, and its manifest if it has one open
+    private String destinationRoot;
+    private Manifest manifest;
+
+    // the workers copying the files, null when the items are copied one at a time
+    private ExecutorService workers;
+
+    // true if the workers start a virtual thread for every file
+    private boolean virtual;
+
+    // the reads from the source and the writes to the destination that may go on
+    // at the same time
+    private CopyPermits permits;
+
+    // moves the bytes of every item to the destination
+    private FileTransfer transfer;
+
+    // the plan of the backup, where the items copied are marked
+    private Checkpoint checkpoint;
+
+    // the segments small files are packed into with copy.pack=true, and the
+    // largest file packed
+    private PackStore packs;
+    private long packMaxSize;
+
+    // the checksums of the copies with copy.hash, and the checksum used
+    private ChecksumCatalog catalog;
+    private String hashAlgorithm;
+
+    // the size of the files copied, and the bytes actually written for them
+    private AtomicLong copiedBytes;
+    private AtomicLong writtenBytes;
 
     /**
      * Default constructor to initialize the object variables with default values
@@ -26,6 +64,10 @@ public class FileCopier {
     FileCopier() {
         this.appIO = AppIO.getInstance();
         this.backupStatus = true;
+        this.transfer = new FileTransfer();
+        this.permits = CopyPermits.NONE;
+        this.copiedBytes = new AtomicLong();
+        this.writtenBytes = new AtomicLong();
     }
 
     /**
@@ -39,70 +81,525 @@ public class FileCopier {
      */
     public boolean fileCopy(String sourceRoot, String destinationRoot, Queue<File> delta) {
         String temp;
+        Checkpoint checkpoint = new Checkpoint(sourceRoot, destinationRoot);
 
-        sourceRoot = Matcher.quoteReplacement(sourceRoot);
-        destinationRoot = Matcher.quoteReplacement(destinationRoot);
+        String source = Matcher.quoteReplacement(sourceRoot);
+        String destination = Matcher.quoteReplacement(destinationRoot);
 
         while (!delta.isEmpty()) {
             // get the path of file to be copied
             temp = this.appIO.fetchCanonical(delta.peek());
-            Path sp = Paths.get(temp);
 
             // create the path of file where it is to be copied
-            temp = temp.replaceFirst(sourceRoot, destinationRoot);
-            Path dp = Paths.get(temp);
+            checkpoint.add(temp, temp.replaceFirst(source, destination), delta.peek().isDirectory());
 
-            this.appIO.printf("%n%n[%s] Copying \"%s\" to \"%s\"", ColorText.text("INFO", Color.BRIGHT_BLUE),
-                    sp.toString(), dp.toString());
+            delta.poll();
+        }
 
-            // start the copying process
-            try {
-                Files.copy(sp, dp, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
-                this.appIO.printf("%n[%s] Copied", ColorText.text("INFO", Color.BRIGHT_BLUE));
+        return this.copyAll(destinationRoot, checkpoint);
+    }
+
+    /**
+     * Method to copy all the entries of a compact index in the delta from source
+     * to destination
+     *
+     * @param sourceRoot      the path to the root folder that needs to be backed up
+     * @param destinationRoot the path to the root folder where backup needs to be
+     *                        done
+     * @param index           the index of the source, retrieved from sourceRoot
+     * @param delta           the ids of the entries of the index to be copied
+     * @return <code>true</code> if every entry was copied, <code>false</code>
+     *         otherwise
+     */
+    public boolean fileCopy(String sourceRoot, String destinationRoot, FileIndex index, IdQueue delta) {
+        Checkpoint checkpoint = new Checkpoint(sourceRoot, destinationRoot);
+
+        while (!delta.isEmpty()) {
+            int id = delta.peek();
+
+            // the paths of the entry at both the locations, built from the index
+            checkpoint.add(index.path(id, sourceRoot), index.path(id, destinationRoot), index.isDirectory(id));
+
+            delta.poll();
+        }
+
+        return this.copyAll(destinationRoot, checkpoint);
+    }
+
+    /**
+     * Method to copy the items left in the plan of an interrupted backup
+     *
+     * @param destinationRoot the path to the root folder where backup needs to be
+     *                        done
+     * @param checkpoint      the plan of the interrupted backup
+     * @return <code>true</code> if every item left was copied, <code>false</code>
+     *         otherwise
+     */
+    public boolean resume(String destinationRoot, Checkpoint checkpoint) {
+        return this.copyAll(destinationRoot, checkpoint);
+    }
+
+    /**
+     * Method to copy every item of a plan that is not copied yet, saving the
+     * plan first and the progress as the items are copied, so that the backup can
+     * be resumed if it is interrupted
+     *
+     * @param destinationRoot the path to the root folder where backup needs to be
+     *                        done
+     * @param checkpoint      the plan of the backup
+     * @return <code>true</code> if every item was copied, <code>false</code>
+     *         otherwise
+     */
+    private boolean copyAll(String destinationRoot, Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        this.checkpoint.start();
+
+        this.openManifest(destinationRoot);
+        this.openPacks();
+        this.openCatalog();
+
+        // the directories come in the order of the delta, where a directory is
+        // before its children, and are all created before any file is copied
+        CopyScheduler scheduler = new CopyScheduler(checkpoint);
+
+        for (int item = 0; item < checkpoint.size(); item++) {
+            if (checkpoint.isDone(item)) {
+                continue;
             }
 
-            // in case the destination has same file, but with permissions issue
-            // try deleting the file and then copy (destination permission will get removed)
-            catch (AccessDeniedException e) {
-                this.appIO.printf("%n[%s] Access denied while backing up of \"%s\" to \"%s\"",
-                        ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
-
-                // if its a file, remove it and try copy again
-                // dont try this method if its a folder, as folder would have other files as
-                // well
-                if (sp.toFile().isFile()) {
-                    this.appIO.printf("%n[%s] Trying to backup \"%s\" to \"%s\" again",
-                            ColorText.text("INFO", Color.BRIGHT_BLUE), sp.toString(), dp.toString());
-
-                    try {
-                        dp.toFile().delete();
-                        Files.copy(sp, dp, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
-                        this.appIO.printf("%n[%s] Copied", ColorText.text("INFO", Color.BRIGHT_BLUE));
-                    }
-
-                    // some other (possibly unknown) exception occurs, skip that file and move on
-                    catch (IOException newE) {
-                        this.appIO.printf("%n[%s] Could not backup \"%s\" to \"%s\"",
-                                ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
-                        this.appIO.printf("%n[%s] Moving ahead with next backup item",
-                                ColorText.text("INFO", Color.BRIGHT_BLUE));
-                        this.backupStatus = false;
-                    }
-                }
+            if (!checkpoint.isDirectory(item)) {
+                scheduler.add(item);
+                continue;
             }
 
-            catch (IOException e) {
-                this.appIO.printf("%n[%s] Exception during copying \"%s\" to \"%s\"",
-                        ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
-                e.printStackTrace();
-                this.appIO.printf("%n[%s] Moving ahead with next backup item",
-                        ColorText.text("INFO", Color.BRIGHT_BLUE));
-                this.backupStatus = false;
+            Path dp = Paths.get(checkpoint.destination(item));
+
+            // only missing directories are planned, so this one was created by an
+            // interrupted run after its last progress was saved
+            if (Files.isDirectory(dp, LinkOption.NOFOLLOW_LINKS)) {
+                this.recordCopy(dp, item, null, null);
+                continue;
             }
 
-            delta.poll();
+            this.copyItem(Paths.get(checkpoint.source(item)), dp, item, null);
+        }
+
+        this.startWorkers(scheduler.threads());
+
+        if (this.workers == null) {
+            for (int item : scheduler.ordered()) {
+                this.copyItem(Paths.get(checkpoint.source(item)), Paths.get(checkpoint.destination(item)), item,
+                        null);
+            }
+        }
+
+        // a virtual thread for every file
+        else if (this.virtual) {
+            scheduler.runEach(this.workers, this::copyLimited,
+                    Settings.getInstance().getInt("threads.virtualLimit"));
+        }
+
+        else {
+            scheduler.run(this.workers, this::copyLimited);
+        }
+
+        this.finishWorkers();
+
+        if (this.packs != null) {
+            this.packs.close();
+        }
+
+        if (this.catalog != null) {
+            this.catalog.close();
+        }
+
+        this.checkpoint.finish();
+        this.saveManifest();
+
+        // unchanged blocks and holes are not written
+        if (this.writtenBytes.get() < this.copiedBytes.get()) {
+            this.appIO.printf("%n%n[%s] %s copied, %s written to the destination",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), FileDetails.humanReadableSize(this.copiedBytes.get()),
+                    FileDetails.humanReadableSize(this.writtenBytes.get()));
         }
 
         return this.backupStatus;
     }
+
+    /**
+     * Method to start the workers, if the settings allow more than one file to be
+     * copied at the same time. With threads.mode=virtual every worker is a
+     * virtual thread, or a thread of the pool as with threads.mode=platform if
+     * this JDK has no virtual threads
+     *
+     * @param threads the workers of all the lanes of the scheduler together
+     */
+    private void startWorkers(int threads) {
+        Settings settings = Settings.getInstance();
+        int readers = settings.getThreads("copy.readers");
+        int writers = settings.getThreads("copy.writers");
+
+        if (VirtualThreads.isRequested()) {
+            this.workers = VirtualThreads.newExecutor();
+            this.virtual = this.workers != null;
+        }
+
+        if (this.workers == null && Math.max(readers, writers) > 1) {
+            this.workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+        }
+
+        if (this.workers != null) {
+            this.permits = new CopyPermits(readers, writers);
+            this.transfer.limit(this.permits);
+        }
+    }
+
+    /**
+     * Method to copy a file on a worker. The copy waits for a permit every time it
+     * reads from the source or writes to the destination, so copy.readers and
+     * copy.writers each limit their side only
+     *
+     * @param item the number of the item in the plan
+     */
+    private void copyLimited(int item) {
+        Path sp = Paths.get(this.checkpoint.source(item));
+        Path dp = Paths.get(this.checkpoint.destination(item));
+        StringBuilder log = new StringBuilder();
+
+        try {
+            this.copyItem(sp, dp, item, log);
+        }
+
+        finally {
+            // all the messages of an item together, not mixed with other items
+            this.appIO.printf("%s", log);
+        }
+    }
+
+    /**
+     * Method to wait until the workers have copied everything handed to them
+     */
+    private void finishWorkers() {
+        if (this.workers == null) {
+            return;
+        }
+
+        this.workers.shutdown();
+
+        try {
+            while (!this.workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.backupStatus = false;
+        }
+
+        this.workers = null;
+    }
+
+    /**
+     * Method to print a message about the item being copied, or keep it in the log
+     * of the item if it is copied by a worker
+     *
+     * @param log  the log of the item, or {@code null} to print right away
+     * @param fmt  the format string
+     * @param args the arguments of the format string
+     */
+    private void report(StringBuilder log, String fmt, Object... args) {
+        if (log == null) {
+            this.appIO.printf(fmt, args);
+        }
+
+        else {
+            log.append(String.format(fmt, args));
+        }
+    }
+
+    /**
+     * Method to report a finished copy, and add it to the bytes copied
+     *
+     * @param result what the copy wrote, and what it did not
+     * @param log    the log of the item, or {@code null}
+     */
+    private void reportCopy(FileTransfer.Result result, StringBuilder log) {
+        this.copiedBytes.addAndGet(result.getSize());
+        this.writtenBytes.addAndGet(result.getWritten());
+
+        if (result.getUnchanged() > 0) {
+            this.report(log, "%n[%s] Copied, %s unchanged at the destination were not written again",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), FileDetails.humanReadableSize(result.getUnchanged()));
+        }
+
+        else if (result.getHoles() > 0) {
+            this.report(log, "%n[%s] Copied %s, %s written and %s left as holes",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), FileDetails.humanReadableSize(result.getSize()),
+                    FileDetails.humanReadableSize(result.getWritten()),
+                    FileDetails.humanReadableSize(result.getHoles()));
+        }
+
+        else {
+            this.report(log, "%n[%s] Copied", ColorText.text("INFO", Color.BRIGHT_BLUE));
+        }
+    }
+
+    /**
+     * Method to copy a single file or directory, recording a failure in the
+     * backup status
+     *
+     * @param sp  the path of the file or directory at the source
+     * @param dp   the path where it is to be copied at the destination
+     * @param item the number of the item in the plan
+     * @param log  the log of the item, or {@code null} to print the messages right
+     *             away
+     */
+    private void copyItem(Path sp, Path dp, int item, StringBuilder log) {
+        this.report(log, "%n%n[%s] Copying \"%s\" to \"%s\"", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                sp.toString(), dp.toString());
+        Throttle.getInstance().acquireFiles(1);
+
+        if (this.packs != null && this.packItem(sp, dp, item, log)) {
+            return;
+        }
+
+        // start the copying process
+        try {
+            FileTransfer.Result result = this.transfer.copy(sp, dp);
+            this.reportCopy(result, log);
+            this.recordCopy(dp, item, result.getHash(), log);
+        }
+
+        // in case the destination has same file, but with permissions issue
+        // try deleting the file and then copy (destination permission will get removed)
+        catch (AccessDeniedException e) {
+            this.report(log, "%n[%s] Access denied while backing up of \"%s\" to \"%s\"",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
+
+            // if its a file, remove it and try copy again
+            // dont try this method if its a folder, as folder would have other files as
+            // well
+            if (sp.toFile().isFile()) {
+                this.report(log, "%n[%s] Trying to backup \"%s\" to \"%s\" again",
+                        ColorText.text("INFO", Color.BRIGHT_BLUE), sp.toString(), dp.toString());
+
+                try {
+                    dp.toFile().delete();
+                    FileTransfer.Result result = this.transfer.copy(sp, dp);
+                    this.reportCopy(result, log);
+                    this.recordCopy(dp, item, result.getHash(), log);
+                }
+
+                // some other (possibly unknown) exception occurs, skip that file and move on
+                catch (IOException newE) {
+                    this.report(log, "%n[%s] Could not backup \"%s\" to \"%s\"",
+                            ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
+                    this.report(log, "%n[%s] Moving ahead with next backup item",
+                            ColorText.text("INFO", Color.BRIGHT_BLUE));
+                    this.backupStatus = false;
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.report(log, "%n[%s] Exception during copying \"%s\" to \"%s\"",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), sp.toString(), dp.toString());
+            e.printStackTrace();
+            this.report(log, "%n[%s] Moving ahead with next backup item",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE));
+            this.backupStatus = false;
+        }
+    }
+
+    /**
+     * Method to find the manifest of the backup location, if it has one open
+     *
+     * @param destinationRoot the path to the root folder where backup needs to be
+     *                        done
+     */
+    private void openManifest(String destinationRoot) {
+        this.destinationRoot = destinationRoot;
+        this.manifest = Manifest.of(destinationRoot);
+    }
+
+    /**
+     * Method to open the segments small files are packed into, if copy.pack is
+     * set. The packed files are only known from the manifest, so a backup location
+     * without one has its files stored individually
+     */
+    private void openPacks() {
+        Settings settings = Settings.getInstance();
+        this.packs = null;
+
+        if (!settings.getBoolean("copy.pack")) {
+            return;
+        }
+
+        if (this.manifest == null) {
+            this.appIO.printf("%n%n[%s] Small files are not packed at \"%s\", as packing needs manifest.enabled=true",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), this.destinationRoot);
+            return;
+        }
+
+        this.packMaxSize = Math.min(settings.getLong("copy.packMaxSize"), PackStore.MAX_PACKED);
+        this.packs = PackStore.open(this.destinationRoot, settings.getLong("copy.packSegmentSize"));
+    }
+
+    /**
+     * Method to pack a small regular file into a segment instead of copying it,
+     * and record it in the manifest with the metadata it has at the source. A file
+     * too large to pack is removed from the segments, if it was packed before, and
+     * copied as usual
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path where it would be copied at the destination
+     * @param item the number of the item in the plan
+     * @param log  the log of the item, or {@code null}
+     * @return <code>true</code> if the item was handled, <code>false</code> if it
+     *         is to be copied
+     */
+    private boolean packItem(Path sp, Path dp, int item, StringBuilder log) {
+        String key = Manifest.relativeKey(this.destinationRoot, dp.toString());
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(sp, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+
+            if (!attributes.isRegularFile() || attributes.size() > this.packMaxSize) {
+                this.packs.remove(key);
+                return false;
+            }
+
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            Path segment = null;
+
+            if (this.packs.contains(key, size, lastModified)) {
+                this.report(log, "%n[%s] Already packed", ColorText.text("INFO", Color.BRIGHT_BLUE));
+            }
+
+            else {
+                Throttle.getInstance().acquireBytes(size);
+                byte[] bytes;
+
+                CopyPermits.Permit reading = this.permits.reading();
+
+                try {
+                    bytes = Files.readAllBytes(sp);
+                }
+
+                finally {
+                    reading.close();
+                }
+
+                CopyPermits.Permit writing = this.permits.writing();
+
+                try {
+                    segment = this.packs.add(key, bytes, lastModified);
+                }
+
+                finally {
+                    writing.close();
+                }
+
+                this.report(log, "%n[%s] Packed", ColorText.text("INFO", Color.BRIGHT_BLUE));
+
+                if (this.catalog != null) {
+                    ContentHash hash = ContentHash.of(this.hashAlgorithm);
+                    hash.update(bytes);
+                    this.catalog.put(key, new ChecksumCatalog.Entry(hash.getAlgorithm(), hash.hex(), bytes.length,
+                            lastModified));
+                }
+            }
+
+            // a copy stored individually by an earlier backup is replaced by the packed one
+            if (Files.isRegularFile(dp, LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(dp);
+            }
+
+            this.manifest.record(key, size, lastModified, false);
+            this.checkpoint.done(item, size, segment);
+        }
+
+        catch (IOException e) {
+            this.report(log, "%n[%s] Could not pack \"%s\". %s", ColorText.text("FAIL", Color.BRIGHT_RED),
+                    sp.toString(), e.getMessage());
+            this.backupStatus = false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to open the catalog of the checksums of the backup location, if
+     * copy.hash is set
+     */
+    private void openCatalog() {
+        this.catalog = null;
+
+        try {
+            ContentHash hash = ContentHash.of(Settings.getInstance().get("copy.hash"));
+
+            if (hash != null) {
+                this.hashAlgorithm = hash.getAlgorithm();
+                this.catalog = ChecksumCatalog.open(this.destinationRoot);
+            }
+        }
+
+        // told by the transfer already
+        catch (IllegalArgumentException e) {
+            return;
+        }
+    }
+
+    /**
+     * Method to mark a copied file or directory in the plan, and record it in the
+     * manifest with the metadata it has at the destination, and in the catalog
+     * with its checksum
+     *
+     * @param dp   the path of the copy at the destination
+     * @param item the number of the item in the plan
+     * @param hash the checksum of the file, or {@code null} if it has none
+     * @param log  the log of the item, or {@code null}
+     */
+    private void recordCopy(Path dp, int item, ContentHash hash, StringBuilder log) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(dp, BasicFileAttributes.class);
+            String key = Manifest.relativeKey(this.destinationRoot, dp.toString());
+
+            // recorded first, to be in the manifest with the group the item is written in
+            if (this.manifest != null) {
+                this.manifest.record(key, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        attributes.isDirectory());
+            }
+
+            this.checkpoint.done(item, attributes.size());
+
+            // a copy without a checksum loses the checksum of the copy it replaced
+            if (this.catalog != null && hash != null) {
+                this.catalog.put(key, new ChecksumCatalog.Entry(hash.getAlgorithm(), hash.hex(), attributes.size(),
+                        attributes.lastModifiedTime().toMillis()));
+            }
+
+            else if (this.catalog != null && !attributes.isDirectory()) {
+                this.catalog.remove(key);
+            }
+        }
+
+        catch (IOException e) {
+            this.report(log, "%n[%s] Could not record \"%s\" as copied. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), dp.toString(), e.getMessage());
+        }
+    }
+
+    /**
+     * Method to fold everything recorded during the backup into a new snapshot of
+     * the manifest
+     */
+    private void saveManifest() {
+        if (this.manifest != null) {
+            this.manifest.save();
+        }
+    }
 }
@@ -1,33 +1,42 @@
 import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
 
 /**
  * Class to fetch the details (metadata) of the file or directory and compare
  * this metadata with other files/directories
  *
+ * The details are read once, when the object is created, and never change.
+ * Only what is needed to compare is kept, including the relative path already
+ * folded for comparison, while what is only shown to the user is computed when
+ * it is printed
+ *
  * @author Bhavyai Gupta
  * @version 1.5.0
  * @since May 29, 2021
  */
-public class FileDetails implements Comparable<FileDetails> {
-    private AppIO appIO;
-    private String name;
-    private long lastModified;
-    private Calendar lastModifiedHuman;
-    private long fileSize;
-    private String humanSize;
-    public boolean isDirectory;
+public final class FileDetails implements Comparable<FileDetails> {
+    // the case sensitivity of this system, which does not change while running
+    private static final boolean IGNORE_CASE = detectIgnoreCase();
+
+    private final File file;
+    private final long lastModified;
+    private final long fileSize;
+    public final boolean isDirectory;
 
     // basePath is used to keep track of the starting directory which user entered
-    public String basePath;
+    public final String basePath;
 
     // the canonical path of the file or directory
-    public String fullPath;
+    public final String fullPath;
 
-    // path relative from the basePath, to be used for comparison
-    public String relativePath;
+    // path relative from the basePath, without a leading separator
+    public final String relativePath;
+
+    // the relative path as compared, lower case if the case is ignored
+    private final String key;
 
     /**
      * Constructor to initialize the object variables with values derived the
@@ -38,58 +47,42 @@ public class FileDetails implements Comparable<FileDetails> {
      *                 started
      */
     public FileDetails(File f, String basePath) {
-        this.appIO = AppIO.getInstance();
-
-        // the name of the file or directory, which humans mostly deal with. eg.
-        // 'file.txt' or 'Documents'
-        this.name = f.getName();
+        this.file = f;
         this.basePath = basePath;
-        this.fullPath = this.appIO.fetchCanonical(f);
-        this.relativePath = this.fullPath.substring(this.basePath.length());
+        this.fullPath = AppIO.getInstance().fetchCanonical(f);
+        this.relativePath = Manifest.relativeKey(basePath, this.fullPath);
+        this.key = IGNORE_CASE ? this.relativePath.toLowerCase() : this.relativePath;
         this.lastModified = f.lastModified();
-        this.lastModifiedHuman = Calendar.getInstance();
-        this.lastModifiedHuman.setTimeInMillis(this.lastModified);
         this.fileSize = f.length();
-        this.humanSize = this.humanReadableSize(this.fileSize);
         this.isDirectory = f.isDirectory();
     }
 
+    /**
+     * @return the relative path as compared by {@link #compareTo(FileDetails)},
+     *         equal for two objects whose comparison is not 100 or 900
+     */
+    public String key() {
+        return this.key;
+    }
+
     /**
      * Method to convert the number of bytes into a human readable size
      *
      * @param fileSize The length of the file in bytes
      * @return a String representing the size in human readable format
      */
-    private String humanReadableSize(long fileSize) {
-        String humanReadableSize = "";
+    public static String humanReadableSize(long fileSize) {
+        String[] units = { " B", "KB", "MB", "GB", "TB" };
 
         int count = 0;
-        double s = (double) this.fileSize;
+        double s = (double) fileSize;
 
-        while (s / 1024 >= 1) {
+        while (s / 1024 >= 1 && count < units.length - 1) {
             s = s / 1024;
             count++;
         }
 
-        switch (count) {
-            case 0:
-                this.humanSize = String.format("%.2f %s", s, " B");
-                break;
-            case 1:
-                this.humanSize = String.format("%.2f %s", s, "KB");
-                break;
-            case 2:
-                this.humanSize = String.format("%.2f %s", s, "MB");
-                break;
-            case 3:
-                this.humanSize = String.format("%.2f %s", s, "GB");
-                break;
-            case 4:
-                this.humanSize = String.format("%.2f %s", s, "TB");
-                break;
-        }
-
-        return humanReadableSize;
+        return String.format("%.2f %s", s, units[count]);
     }
 
     /**
@@ -97,12 +90,13 @@ public class FileDetails implements Comparable<FileDetails> {
      * constructor
      */
     public void printDetails() {
+        AppIO appIO = AppIO.getInstance();
         DateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 
-        this.appIO.printf("%n%nName: %s", this.name);
-        this.appIO.printf("%nLocation: %s", this.fullPath);
-        this.appIO.printf("%nLast Modification: %s", formatter.format(this.lastModifiedHuman.getTime()));
-        this.appIO.printf("%nSize: %s", this.humanSize);
+        appIO.printf("%n%nName: %s", this.file.getName());
+        appIO.printf("%nLocation: %s", this.fullPath);
+        appIO.printf("%nLast Modification: %s", formatter.format(new Date(this.lastModified)));
+        appIO.printf("%nSize: %s", humanReadableSize(this.fileSize));
     }
 
     /**
@@ -113,7 +107,17 @@ public class FileDetails implements Comparable<FileDetails> {
      * @return <code>false</code> for *nix and solaris, <code>true</code> for
      *         windows and macOS
      */
-    private boolean ignoreCase() {
+    static boolean ignoreCase() {
+        return IGNORE_CASE;
+    }
+
+    /**
+     * Method to find the case sensitivity of this system from its name
+     *
+     * @return <code>false</code> for *nix and solaris, <code>true</code> for
+     *         windows and macOS
+     */
+    private static boolean detectIgnoreCase() {
         String os = System.getProperty("os.name").toLowerCase();
 
         if (os.indexOf("win") > -1)
@@ -161,28 +165,41 @@ public class FileDetails implements Comparable<FileDetails> {
      */
     @Override
     public int compareTo(FileDetails fd) {
-        // declare strings for comparison
-        String compareSrc;
-        String compareDst;
-
-        // make both comparison strings lowercase for case-insensitive comparison
-        if (this.ignoreCase()) {
-            compareSrc = this.relativePath.toLowerCase();
-            compareDst = fd.relativePath.toLowerCase();
-        }
+        // both keys are lowercase already for case-insensitive comparison
+        return this.classify(this.key.compareTo(fd.key), fd);
+    }
 
-        else {
-            compareSrc = this.relativePath;
-            compareDst = fd.relativePath;
-        }
+    /**
+     * Method to compare this FileDetails object with another one passed as an
+     * argument, ordering the relative paths with the given comparator instead of
+     * the natural order of String
+     *
+     * @param fd    The FileDetails object to be compared with this object
+     * @param order The order of the relative paths, which must be the order in
+     *              which both the objects were retrieved
+     * @return Any of the integers as returned by {@link #compareTo(FileDetails)}
+     */
+    public int compareTo(FileDetails fd, Comparator<String> order) {
+        return this.classify(order.compare(this.relativePath, fd.relativePath), fd);
+    }
 
+    /**
+     * Method to turn the comparison of the relative paths into the result of
+     * {@link #compareTo(FileDetails)}
+     *
+     * @param pathComparison negative, zero or positive as the relative path of
+     *                       this object is lower, same or higher than of fd
+     * @param fd             The FileDetails object compared with this object
+     * @return Any of the integers as returned by {@link #compareTo(FileDetails)}
+     */
+    private int classify(int pathComparison, FileDetails fd) {
         // if source file/directory is missing from destination
-        if (compareSrc.compareTo(compareDst) < 0) {
+        if (pathComparison < 0) {
             return 100;
         }
 
         // if extra file/directory is present in destination
-        else if (compareSrc.compareTo(compareDst) > 0) {
+        else if (pathComparison > 0) {
             return 900;
         }
 
@@ -0,0 +1,396 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact, columnar index of a scanned directory tree.
+ *
+ * Every file or directory is an entry identified by an int id, and each of its
+ * properties is kept in a primitive array indexed by that id: the id of its
+ * parent directory, the id of its name, its last modification time, its size
+ * and its type. Names are stored once as UTF-8 bytes in a shared pool, so a
+ * name repeated in many directories (like "index.html" or ".git") costs only a
+ * few bytes per entry. Full paths are never stored, they are rebuilt from the
+ * chain of parents when needed.
+ *
+ * The children of a directory are stored as one contiguous block of ids,
+ * sorted by name, so two indexes can be compared directory by directory
+ * without sorting the whole tree. The entry with id 0 is the root directory
+ * from where the scan started
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class FileIndex {
+    public static final byte FILE = 0;
+    public static final byte DIRECTORY = 1;
+
+    // the id of the root directory
+    public static final int ROOT = 0;
+
+    // true if names differing only in case are the same name
+    private final boolean ignoreCase;
+
+    // number of entries, including the root
+    private int count;
+
+    // the columns, one element per entry
+    private int[] parent;
+    private int[] name;
+    private long[] lastModified;
+    private long[] size;
+    private byte[] type;
+    private int[] childStart;
+    private int[] childCount;
+
+    // the pool of the distinct names, as UTF-8 bytes
+    private byte[] nameBytes;
+    private int nameBytesUsed;
+    private int[] nameStart;
+    private int nameCount;
+
+    // open addressing table from the hash of a name to its (id + 1), 0 if empty
+    private int[] nameTable;
+
+    /**
+     * Default constructor to create an index holding just the root directory,
+     * with the case sensitivity of this system
+     */
+    public FileIndex() {
+        this(FileDetails.ignoreCase());
+    }
+
+    /**
+     * Constructor to create an index holding just the root directory
+     *
+     * @param ignoreCase <code>true</code> if names differing only in case are the
+     *                   same
+     */
+    public FileIndex(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+
+        int capacity = 1024;
+        this.parent = new int[capacity];
+        this.name = new int[capacity];
+        this.lastModified = new long[capacity];
+        this.size = new long[capacity];
+        this.type = new byte[capacity];
+        this.childStart = new int[capacity];
+        this.childCount = new int[capacity];
+
+        this.nameBytes = new byte[16 * capacity];
+        this.nameStart = new int[capacity + 1];
+        this.nameTable = new int[2 * capacity];
+
+        // the root directory, with an empty name
+        this.parent[ROOT] = -1;
+        this.name[ROOT] = this.intern(new byte[0]);
+        this.type[ROOT] = DIRECTORY;
+        this.count = 1;
+    }
+
+    /**
+     * Method to add the children of a directory as one contiguous block of
+     * entries. The children are sorted by name, and the parameter children is
+     * reordered in the same way, so that the file at position k of the list is
+     * the entry with id (returned value + k)
+     *
+     * @param directory The id of the directory whose children are added
+     * @param children  The children of the directory
+     * @return the id of the first child
+     */
+    public synchronized int addChildren(int directory, List<File> children) {
+        int n = children.size();
+        List<Child> sorted = new ArrayList<>(n);
+
+        for (File f : children) {
+            sorted.add(new Child(f, f.getName().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        sorted.sort((a, b) -> compareBytes(a.name, 0, a.name.length, b.name, 0, b.name.length));
+        this.ensureCapacity(this.count + n);
+
+        int first = this.count;
+
+        for (int k = 0; k < n; k++) {
+            File f = sorted.get(k).file;
+            int id = first + k;
+
+            children.set(k, f);
+            this.parent[id] = directory;
+            this.name[id] = this.intern(sorted.get(k).name);
+            this.lastModified[id] = f.lastModified();
+            this.size[id] = f.length();
+            this.type[id] = f.isDirectory() ? DIRECTORY : FILE;
+        }
+
+        this.childStart[directory] = first;
+        this.childCount[directory] = n;
+        this.count = first + n;
+
+        return first;
+    }
+
+    /**
+     * @return the number of entries, including the root directory
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * @param id the id of an entry
+     * @return the id of the parent directory, or -1 for the root
+     */
+    public int parent(int id) {
+        return this.parent[id];
+    }
+
+    /**
+     * @param id the id of a directory
+     * @return the id of its first child
+     */
+    public int childStart(int id) {
+        return this.childStart[id];
+    }
+
+    /**
+     * @param id the id of a directory
+     * @return the number of its children
+     */
+    public int childCount(int id) {
+        return this.childCount[id];
+    }
+
+    /**
+     * @param id the id of an entry
+     * @return <code>true</code> if the entry is a directory
+     */
+    public boolean isDirectory(int id) {
+        return this.type[id] == DIRECTORY;
+    }
+
+    /**
+     * @param id the id of an entry
+     * @return the last modification time in milliseconds
+     */
+    public long lastModified(int id) {
+        return this.lastModified[id];
+    }
+
+    /**
+     * @param id the id of an entry
+     * @return the size in bytes
+     */
+    public long length(int id) {
+        return this.size[id];
+    }
+
+    /**
+     * Method to compare the name of an entry of this index with the name of an
+     * entry of another index, in the order in which children are sorted
+     *
+     * @param id      the id of an entry of this index
+     * @param other   the other index
+     * @param otherId the id of an entry of the other index
+     * @return negative, zero or positive as the name of this entry is lower, same
+     *         or higher than the other name
+     */
+    public int compareName(int id, FileIndex other, int otherId) {
+        int a = this.name[id];
+        int b = other.name[otherId];
+
+        return this.compareBytes(this.nameBytes, this.nameStart[a], this.nameStart[a + 1] - this.nameStart[a],
+                other.nameBytes, other.nameStart[b], other.nameStart[b + 1] - other.nameStart[b]);
+    }
+
+    /**
+     * Method to rebuild the full path of an entry
+     *
+     * @param id   the id of an entry
+     * @param root the path of the root directory, to which the path is relative
+     * @return the path of the entry
+     */
+    public String path(int id, String root) {
+        if (id == ROOT) {
+            return root;
+        }
+
+        // roots like "/" or "D:\" already end with the separator
+        if (root.endsWith(File.separator)) {
+            root = root.substring(0, root.length() - 1);
+        }
+
+        return root + this.relativePath(id);
+    }
+
+    /**
+     * Method to rebuild the path of an entry relative to the root directory,
+     * starting with a separator
+     *
+     * @param id the id of an entry
+     * @return the relative path of the entry
+     */
+    public String relativePath(int id) {
+        int depth = 0;
+
+        for (int p = id; p != ROOT; p = this.parent[p]) {
+            depth++;
+        }
+
+        String[] parts = new String[depth];
+
+        for (int p = id; p != ROOT; p = this.parent[p]) {
+            int n = this.name[p];
+            parts[--depth] = new String(this.nameBytes, this.nameStart[n], this.nameStart[n + 1] - this.nameStart[n],
+                    StandardCharsets.UTF_8);
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (String part : parts) {
+            sb.append(File.separatorChar).append(part);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Method to compare two names byte by byte, folding the ASCII letters if
+     * the case is to be ignored
+     */
+    private int compareBytes(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int n = Math.min(aLength, bLength);
+
+        for (int i = 0; i < n; i++) {
+            int x = a[aOffset + i] & 0xff;
+            int y = b[bOffset + i] & 0xff;
+
+            if (x != y) {
+                if (this.ignoreCase) {
+                    x = (x >= 'A' && x <= 'Z') ? x + ('a' - 'A') : x;
+                    y = (y >= 'A' && y <= 'Z') ? y + ('a' - 'A') : y;
+                }
+
+                if (x != y) {
+                    return x - y;
+                }
+            }
+        }
+
+        return aLength - bLength;
+    }
+
+    /**
+     * Method to find the id of a name in the pool, adding it if it is not there
+     *
+     * @param bytes the name as UTF-8 bytes
+     * @return the id of the name
+     */
+    private int intern(byte[] bytes) {
+        int mask = this.nameTable.length - 1;
+        int slot = Arrays.hashCode(bytes) & mask;
+
+        while (this.nameTable[slot] != 0) {
+            int id = this.nameTable[slot] - 1;
+            int start = this.nameStart[id];
+
+            if (Arrays.equals(bytes, 0, bytes.length, this.nameBytes, start, this.nameStart[id + 1])) {
+                return id;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        // a new name, append it to the pool
+        if (this.nameBytesUsed + bytes.length > this.nameBytes.length) {
+            this.nameBytes = Arrays.copyOf(this.nameBytes,
+                    Math.max(this.nameBytes.length + (this.nameBytes.length >> 1), this.nameBytesUsed + bytes.length));
+        }
+
+        if (this.nameCount + 2 > this.nameStart.length) {
+            this.nameStart = Arrays.copyOf(this.nameStart, this.nameStart.length + (this.nameStart.length >> 1));
+        }
+
+        int id = this.nameCount++;
+        System.arraycopy(bytes, 0, this.nameBytes, this.nameBytesUsed, bytes.length);
+        this.nameBytesUsed += bytes.length;
+        this.nameStart[id + 1] = this.nameBytesUsed;
+        this.nameTable[slot] = id + 1;
+
+        // keep the table at most half full
+        if (2 * this.nameCount > this.nameTable.length) {
+            this.rehash();
+        }
+
+        return id;
+    }
+
+    /**
+     * Method to double the size of the table of names
+     */
+    private void rehash() {
+        int[] table = new int[2 * this.nameTable.length];
+        int mask = table.length - 1;
+
+        for (int id = 0; id < this.nameCount; id++) {
+            int start = this.nameStart[id];
+            int slot = hashCode(this.nameBytes, start, this.nameStart[id + 1]) & mask;
+
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = id + 1;
+        }
+
+        this.nameTable = table;
+    }
+
+    /**
+     * Method to compute the same hash as Arrays.hashCode(byte[]) for a range
+     */
+    private static int hashCode(byte[] bytes, int from, int to) {
+        int h = 1;
+
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+
+        return h;
+    }
+
+    /**
+     * Method to grow the columns so that they can hold the given number of entries
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.parent.length) {
+            return;
+        }
+
+        int n = Math.max(capacity, this.parent.length + (this.parent.length >> 1));
+        this.parent = Arrays.copyOf(this.parent, n);
+        this.name = Arrays.copyOf(this.name, n);
+        this.lastModified = Arrays.copyOf(this.lastModified, n);
+        this.size = Arrays.copyOf(this.size, n);
+        this.type = Arrays.copyOf(this.type, n);
+        this.childStart = Arrays.copyOf(this.childStart, n);
+        this.childCount = Arrays.copyOf(this.childCount, n);
+    }
+
+    /**
+     * A child waiting to be sorted by its encoded name
+     */
+    private static class Child {
+        private final File file;
+        private final byte[] name;
+
+        Child(File file, byte[] name) {
+            this.file = file;
+            this.name = name;
+        }
+    }
+}
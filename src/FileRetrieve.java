@@ -1,6 +1,33 @@
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
 
 /**
  * Class to retrieve all the files and folders that are eligible for backup, and
@@ -17,9 +44,16 @@ public class FileRetrieve {
     // Skipper object to check which directories are to be excluded
     private Skipper sk;
 
+    // Settings object to read the scan configuration
+    private Settings settings;
+
     // allFiles will be storing the complete list of files and directories scanned
     public ArrayList<File> allFiles;
 
+    // the compact index storing the files and directories, when it is used instead
+    // of allFiles
+    public FileIndex index;
+
     // basePath is used to keep track of the starting directory which user entered
     public String basePath;
 
@@ -29,13 +63,62 @@ public class FileRetrieve {
     // used only for stat purposes
     private long directoryCount;
 
+    // stat counters, shared by the tasks of a parallel scan
+    private LongAdder fileCounter;
+    private LongAdder directoryCounter;
+
+    // true if the entries are read with a single attributes call each
+    private boolean attributeScan;
+
+    // entries of a streamed retrieval, handed over while the scan is still running
+    private BlockingQueue<File> stream;
+
+    // marks the end of a streamed retrieval
+    private static final File END_OF_STREAM = new File("");
+
+    // true once the end of a streamed retrieval has been taken
+    private boolean streamEnded;
+
+    // set by the consumer of a streamed retrieval when no more entries are needed
+    private volatile boolean streamClosed;
+
+    // number of entries a streamed retrieval may run ahead of its consumer
+    private static final int STREAM_CAPACITY = 8192;
+
+    // the manifest of basePath, if it is a backup location with one open
+    private Manifest manifest;
+
+    // the backup locations, where the files still being copied are left out
+    private static final Set<String> destinations = ConcurrentHashMap.newKeySet();
+
+    // the thread running a streamed retrieval
+    private Thread producer;
+
+    // what the last scan of basePath found, if directories unchanged since then
+    // are not to be listed again
+    private ScanState scanState;
+
+    /**
+     * Method to tell the scans that a directory is a backup location, where the
+     * files named like a copy still being written are Tranquil's own. Anywhere
+     * else they are files like any other
+     *
+     * @param basePath The canonical path of the backup location
+     */
+    public static void markDestination(String basePath) {
+        destinations.add(basePath);
+    }
+
     /**
      * Default constructor to initialize object variables with default values
      */
     private FileRetrieve() {
         this.appIO = AppIO.getInstance();
         this.sk = Skipper.getInstance();
+        this.settings = Settings.getInstance();
         this.allFiles = new ArrayList<>();
+        this.fileCounter = new LongAdder();
+        this.directoryCounter = new LongAdder();
     }
 
     /**
@@ -46,17 +129,28 @@ public class FileRetrieve {
      *                 system from where all files and folders are to be retrieved
      */
     public FileRetrieve(String basePath) {
+        this(basePath, true);
+    }
+
+    /**
+     * Two parameter constructor that retrieves all files and folders present in the
+     * parameter basePath, sorting them only if asked to. Unsorted, every directory
+     * still comes before its children
+     *
+     * @param basePath The canonical representation of a directory in the file
+     *                 system from where all files and folders are to be retrieved
+     * @param sort     <code>true</code> to sort allFiles
+     */
+    public FileRetrieve(String basePath, boolean sort) {
         // call the no parameter constructor for initialization
         this();
 
         // storing basePath for future use by the class Delta
         this.basePath = basePath;
 
-        this.appIO.printf("%n%n[%s] Scanning \"%s\"...", ColorText.text("INFO", Color.BRIGHT_BLUE),
-                this.basePath);
+        this.announce();
 
-        // the actual retrieval process
-        this.retrieve(this.basePath);
+        this.retrieveAll();
 
         this.appIO.printf("%n[%s] %d files and %d directories scanned at \"%s\"",
                 ColorText.text("PASS", Color.BRIGHT_GREEN), this.fileCount, this.directoryCount, this.basePath);
@@ -64,7 +158,349 @@ public class FileRetrieve {
         // sort the allFiles, so that order in both source and destination is same
         // the File.listFiles() does not guarantee any order, therefore sorting is
         // required
+        if (sort) {
+            Collections.sort(allFiles);
+        }
+    }
+
+    /**
+     * Two parameter constructor that retrieves all files and folders present in the
+     * parameter basePath into a compact index, instead of the list allFiles
+     *
+     * @param basePath The canonical representation of a directory in the file
+     *                 system from where all files and folders are to be retrieved
+     * @param index    The empty index where the files and folders are to be stored
+     */
+    public FileRetrieve(String basePath, FileIndex index) {
+        // call the no parameter constructor for initialization
+        this();
+
+        // storing basePath for future use by the class Delta
+        this.basePath = basePath;
+        this.index = index;
+
+        this.announce();
+
+        this.retrieveAll();
+
+        this.appIO.printf("%n[%s] %d files and %d directories scanned at \"%s\"",
+                ColorText.text("PASS", Color.BRIGHT_GREEN), this.fileCount, this.directoryCount, this.basePath);
+    }
+
+    /**
+     * Two parameter constructor that starts retrieving all files and folders
+     * present in the parameter basePath on a thread of its own, and returns
+     * immediately. Instead of filling allFiles, the entries are handed over one by
+     * one through {@link #next()}, in the order given by the parameter order, so
+     * that the consumer can work while the scan is still running
+     *
+     * @param basePath The canonical representation of a directory in the file
+     *                 system from where all files and folders are to be retrieved
+     * @param order    The order of the paths, relative to basePath, in which the
+     *                 entries are to be handed over
+     */
+    public FileRetrieve(String basePath, Comparator<String> order) {
+        // call the no parameter constructor for initialization
+        this();
+
+        // storing basePath for future use by the class Delta
+        this.basePath = basePath;
+        this.attributeScan = this.settings.get("scan.mode").equalsIgnoreCase("nio");
+        this.stream = new ArrayBlockingQueue<>(STREAM_CAPACITY);
+
+        this.announce();
+
+        this.producer = new Thread(() -> {
+            try {
+                this.retrieveOrdered(this.basePath, order);
+
+                if (this.manifest != null && this.manifest.isRebuilding()) {
+                    this.manifest.finishRebuild();
+                }
+
+                this.saveScanState();
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            finally {
+                this.fileCount = this.fileCounter.sum();
+                this.directoryCount = this.directoryCounter.sum();
+
+                if (this.streamClosed) {
+                    this.appIO.printf("%n[%s] Stopped scanning \"%s\", nothing is left to compare with",
+                            ColorText.text("INFO", Color.BRIGHT_BLUE), this.basePath);
+                }
+
+                else {
+                    this.appIO.printf("%n[%s] %d files and %d directories scanned at \"%s\"",
+                            ColorText.text("PASS", Color.BRIGHT_GREEN), this.fileCount, this.directoryCount,
+                            this.basePath);
+                    this.endStream();
+                }
+            }
+        }, "scan " + basePath);
+
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Two parameter constructor that retrieves only the given files and folders
+     * present in the parameter basePath, with the directories containing them,
+     * instead of scanning the whole basePath. Paths that do not exist any more are
+     * left out
+     *
+     * @param basePath The canonical representation of a directory in the file
+     *                 system from where the files and folders are to be retrieved
+     * @param paths    The paths relative to basePath, mapped to <code>true</code>
+     *                 for the directories whose whole tree is to be retrieved too
+     */
+    public FileRetrieve(String basePath, Map<String, Boolean> paths) {
+        // call the no parameter constructor for initialization
+        this();
+
+        // storing basePath for future use by the class Delta
+        this.basePath = basePath;
+        this.attributeScan = this.settings.get("scan.mode").equalsIgnoreCase("nio");
+
+        this.appIO.printf("%n%n[%s] Reading %d changed paths at \"%s\"...", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                paths.size(), this.basePath);
+
+        Map<String, Boolean> parents = new HashMap<>();
+
+        for (Map.Entry<String, Boolean> e : paths.entrySet()) {
+            this.retrievePath(e.getKey(), e.getValue(), parents);
+        }
+
+        // a path may have been retrieved again with the tree of its directory
         Collections.sort(allFiles);
+        ArrayList<File> unique = new ArrayList<>(allFiles.size());
+
+        for (File f : allFiles) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).equals(f)) {
+                unique.add(f);
+
+                if (f.isDirectory()) {
+                    this.directoryCount++;
+                }
+
+                else {
+                    this.fileCount++;
+                }
+            }
+        }
+
+        this.allFiles = unique;
+
+        this.appIO.printf("%n[%s] %d files and %d directories read at \"%s\"",
+                ColorText.text("PASS", Color.BRIGHT_GREEN), this.fileCount, this.directoryCount, this.basePath);
+    }
+
+    /**
+     * Method to list the paths of all the retrieved files and folders, relative to
+     * basePath, so that the same paths can be retrieved at another location
+     *
+     * @return the relative paths, all mapped to <code>false</code>
+     */
+    public Map<String, Boolean> relativePaths() {
+        Map<String, Boolean> paths = new HashMap<>();
+
+        for (File f : allFiles) {
+            paths.put(Manifest.relativeKey(this.basePath, f.getPath()), false);
+        }
+
+        return paths;
+    }
+
+    /**
+     * Method to take the next entry of a streamed retrieval, waiting for the scan
+     * if it has not reached there yet
+     *
+     * @return the next file or directory, or {@code null} if the scan is over
+     */
+    public File next() {
+        if (this.streamEnded) {
+            return null;
+        }
+
+        try {
+            File f = this.stream.take();
+
+            if (f == END_OF_STREAM) {
+                this.streamEnded = true;
+                return null;
+            }
+
+            return f;
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.streamEnded = true;
+            return null;
+        }
+    }
+
+    /**
+     * Method to mark the end of a streamed retrieval, unless the consumer has
+     * stopped it already
+     */
+    private void endStream() {
+        try {
+            // keep checking, as a consumer that stopped would never make space
+            while (!this.streamClosed && !this.stream.offer(END_OF_STREAM, 100, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method to stop a streamed retrieval whose remaining entries are not needed
+     */
+    public void close() {
+        this.streamClosed = true;
+        this.streamEnded = true;
+
+        // unblock the producer if it is waiting for space
+        this.stream.clear();
+
+        // a manifest being rebuilt is complete only when the whole tree is walked
+        if (this.manifest != null && this.manifest.isRebuilding()) {
+            try {
+                this.producer.join();
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Method to run the actual retrieval process from the basePath, either walked
+     * by this thread, split across a work-stealing pool with one task per
+     * directory, or listed on one virtual thread per directory
+     */
+    private void retrieveAll() {
+        int parallelism = this.settings.getThreads("scan.parallelism");
+        this.attributeScan = this.settings.get("scan.mode").equalsIgnoreCase("nio");
+
+        ExecutorService virtualThreads = VirtualThreads.isRequested() ? VirtualThreads.newExecutor() : null;
+
+        if (virtualThreads != null) {
+            this.retrieveVirtual(virtualThreads, this.settings.getInt("threads.virtualLimit"));
+        }
+
+        else if (parallelism > 1) {
+            this.retrieveParallel(this.basePath, parallelism);
+        }
+
+        else {
+            this.retrieve(this.basePath, FileIndex.ROOT);
+        }
+
+        this.fileCount = this.fileCounter.sum();
+        this.directoryCount = this.directoryCounter.sum();
+
+        if (this.manifest != null && this.manifest.isRebuilding()) {
+            this.manifest.finishRebuild();
+        }
+
+        this.saveScanState();
+    }
+
+    /**
+     * Method to save what this scan found, so that the next scan can skip the
+     * directories that do not change in between
+     */
+    private void saveScanState() {
+        if (this.scanState == null) {
+            return;
+        }
+
+        if (this.scanState.reused() > 0) {
+            this.appIO.printf("%n[%s] %d directories unchanged since the last scan of \"%s\" were not listed again",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), this.scanState.reused(), this.basePath);
+        }
+
+        this.scanState.save();
+    }
+
+    /**
+     * Method to retrieve a single path relative to basePath, along with the
+     * directories leading to it, unless the path or one of them is not eligible
+     * for backup
+     *
+     * @param relativePath The path relative to basePath
+     * @param tree         <code>true</code> to retrieve the whole tree of the path
+     *                     if it is a directory
+     * @param parents      The directories already retrieved, mapped to
+     *                     <code>true</code> if they are eligible for backup
+     */
+    private void retrievePath(String relativePath, boolean tree, Map<String, Boolean> parents) {
+        String[] names = relativePath.split(Pattern.quote(File.separator));
+        String parent = this.basePath;
+
+        for (int k = 0; k < names.length; k++) {
+            if (names[k].isEmpty()) {
+                continue;
+            }
+
+            Path p = Paths.get(parent, names[k]);
+            boolean last = (k == names.length - 1);
+            Boolean eligible = last ? null : parents.get(p.toString());
+
+            if (eligible == null) {
+                List<File> found = new ArrayList<>(1);
+                List<String> subDirectories = new ArrayList<>(1);
+                this.admit(p, names[k], parent, found, subDirectories, null);
+                allFiles.addAll(found);
+
+                eligible = !subDirectories.isEmpty();
+                parents.put(p.toString(), eligible);
+
+                if (last && tree && eligible) {
+                    this.retrieve(subDirectories.get(0), -1);
+                }
+            }
+
+            // the rest of the path is not eligible, or does not exist any more
+            if (!eligible) {
+                return;
+            }
+
+            parent = p.toString();
+        }
+    }
+
+    /**
+     * Method to find the manifest of basePath, if any, and tell the user where
+     * the files and folders are read from
+     */
+    private void announce() {
+        this.manifest = Manifest.of(this.basePath);
+
+        if (this.manifest != null && !this.manifest.isRebuilding()) {
+            this.appIO.printf("%n%n[%s] Reading \"%s\" from its manifest...", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                    this.basePath);
+        }
+
+        else {
+            this.appIO.printf("%n%n[%s] Scanning \"%s\"...", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                    this.basePath);
+        }
+
+        // a backup location is either read from its manifest, or scanned to verify it
+        if (this.manifest == null && this.settings.getBoolean("scan.prune")) {
+            this.scanState = new ScanState(this.basePath, this.settings.getInt("scan.fullRescanEvery"));
+        }
     }
 
     /**
@@ -72,41 +508,554 @@ public class FileRetrieve {
      * retrieve the child files and directories, and store them in ArrayList
      * allFiles
      *
+     * @param filePath  A directory in the file system from where the retrieval is
+     *                  initiated
+     * @param directory The id of the directory in the index, if the index is used
+     */
+    private void retrieve(String filePath, int directory) {
+        List<String> subDirectories = new ArrayList<>();
+        List<File> found = this.enlist(filePath, subDirectories);
+
+        if (this.index == null) {
+            allFiles.addAll(found);
+
+            for (String d : subDirectories) {
+                retrieve(d, -1);
+            }
+        }
+
+        else {
+            int first = this.index.addChildren(directory, found);
+
+            for (int k = 0; k < found.size(); k++) {
+                if (this.index.isDirectory(first + k)) {
+                    retrieve(this.appIO.fetchCanonical(found.get(k)), first + k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to retrieve the child files and directories of the parameter filePath
+     * on a ForkJoinPool, where every directory becomes a task of its own. Idle
+     * workers steal the pending directories of the busy ones, so the metadata
+     * reads of many directories are in flight at the same time
+     *
+     * @param filePath    A directory in the file system from where the retrieval is
+     *                    initiated
+     * @param parallelism The number of worker threads of the pool
+     */
+    private void retrieveParallel(String filePath, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            pool.invoke(new DirectoryTask(filePath, FileIndex.ROOT));
+        }
+
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Method to retrieve the child files and directories of basePath with every
+     * directory listed on a virtual thread of its own. A thread blocked on the
+     * file system costs next to nothing, so the number of listings in flight is
+     * bounded by a semaphore rather than by the number of threads
+     *
+     * @param executor The executor starting a virtual thread per task
+     * @param limit    The number of directories listed at the same time
+     */
+    private void retrieveVirtual(ExecutorService executor, int limit) {
+        Semaphore listings = new Semaphore(Math.max(limit, 1));
+
+        // directories submitted and not yet listed, the scan is over at zero
+        AtomicLong outstanding = new AtomicLong(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            this.submitDirectory(executor, listings, outstanding, done, this.basePath, FileIndex.ROOT);
+            done.await();
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Method to list a directory on a virtual thread, and submit its
+     * subdirectories in turn
+     *
+     * @param executor    The executor starting a virtual thread per task
+     * @param listings    The permits to list a directory
+     * @param outstanding The number of directories submitted and not yet listed,
+     *                    including this one
+     * @param done        Counted down once every directory is listed
+     * @param filePath    The directory to be listed
+     * @param directory   The id of the directory in the index, if the index is used
+     */
+    private void submitDirectory(ExecutorService executor, Semaphore listings, AtomicLong outstanding,
+            CountDownLatch done, String filePath, int directory) {
+        executor.execute(() -> {
+            try {
+                List<String> subDirectories = new ArrayList<>();
+                List<File> found;
+
+                listings.acquire();
+
+                try {
+                    found = this.enlist(filePath, subDirectories);
+                }
+
+                finally {
+                    listings.release();
+                }
+
+                this.store(directory, found, subDirectories, (d, id) -> {
+                    outstanding.incrementAndGet();
+                    this.submitDirectory(executor, listings, outstanding, done, d, id);
+                });
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            finally {
+                if (outstanding.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to store the children of a directory listed by a parallel scan, and
+     * hand over each of its subdirectories to be listed next
+     *
+     * @param directory      The id of the directory in the index, if the index is
+     *                       used
+     * @param found          The children eligible for backup
+     * @param subDirectories The canonical paths of the subdirectories among them
+     * @param next           Called with the canonical path and the id of every
+     *                       subdirectory
+     */
+    private void store(int directory, List<File> found, List<String> subDirectories,
+            BiConsumer<String, Integer> next) {
+        if (this.index == null) {
+            // one lock per directory, instead of one per entry
+            synchronized (this.allFiles) {
+                this.allFiles.addAll(found);
+            }
+
+            for (String d : subDirectories) {
+                next.accept(d, -1);
+            }
+        }
+
+        else {
+            int first = this.index.addChildren(directory, found);
+
+            for (int k = 0; k < found.size(); k++) {
+                if (this.index.isDirectory(first + k)) {
+                    next.accept(this.appIO.fetchCanonical(found.get(k)), first + k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to walk the directory filePath depth-first, enlisting the children of
+     * every directory sorted by name, and hand over every entry to the stream
+     * before its own children
+     *
      * @param filePath A directory in the file system from where the retrieval is
      *                 initiated
+     * @param order    The order of the names within a directory
+     * @throws InterruptedException if interrupted while waiting for the consumer
      */
-    private void retrieve(String filePath) {
+    private void retrieveOrdered(String filePath, Comparator<String> order) throws InterruptedException {
+        List<File> found = this.enlist(filePath, new ArrayList<>());
+        found.sort((a, b) -> order.compare(a.getName(), b.getName()));
+
+        for (File f : found) {
+            // a manifest being rebuilt needs the whole tree, even if the consumer does not
+            if (!this.streamClosed) {
+                this.stream.put(f);
+            }
+
+            else if (this.manifest == null || !this.manifest.isRebuilding()) {
+                return;
+            }
+
+            if (f.isDirectory()) {
+                this.retrieveOrdered(this.appIO.fetchCanonical(f), order);
+            }
+        }
+    }
+
+    /**
+     * Method to enlist the children of a single directory that are eligible for
+     * backup, skipping the mandatory and the excluded ones
+     *
+     * @param filePath       A directory in the file system, in canonical form
+     * @param subDirectories The list where the canonical paths of the eligible
+     *                       child directories are added, to be enlisted next
+     * @return the eligible child files and directories
+     */
+    private List<File> enlist(String filePath, List<String> subDirectories) {
+        List<File> found;
+
+        if (this.manifest != null && !this.manifest.isRebuilding()) {
+            return this.enlistManifest(filePath, subDirectories);
+        }
+
+        // the children of a directory unchanged since the last scan need not be listed
+        String[] known = null;
+        List<String> names = null;
+        long modified = 0;
+
+        if (this.scanState != null) {
+            modified = this.directoryModified(filePath);
+            names = new ArrayList<>();
+
+            if (modified != Long.MIN_VALUE) {
+                known = this.scanState.children(filePath, modified);
+            }
+        }
+
+        if (this.attributeScan) {
+            found = this.enlistAttributes(filePath, subDirectories, known, names);
+        }
+
+        else {
+            found = this.enlistFiles(filePath, subDirectories, known, names);
+        }
+
+        // a directory that could not be listed is listed again next time
+        if (found == null) {
+            found = new ArrayList<>();
+        }
+
+        else if (this.scanState != null && modified != Long.MIN_VALUE) {
+            this.scanState.record(filePath, modified, names);
+        }
+
+        // the next directory waits for the files of this one to fit in the limit
+        Throttle.getInstance().acquireFiles(found.size());
+
+        // the scan of a backup location without a usable manifest builds a new one
+        if (this.manifest != null) {
+            for (File f : found) {
+                this.manifest.add(Manifest.relativeKey(this.basePath, f.getPath()), f.length(), f.lastModified(),
+                        f.isDirectory());
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Method to enlist a directory of a backup location from its manifest, without
+     * touching the disk
+     *
+     * @param filePath       A directory of the backup location, in canonical form
+     * @param subDirectories The list where the canonical paths of the eligible
+     *                       child directories are added
+     * @return the eligible child files and directories
+     */
+    private List<File> enlistManifest(String filePath, List<String> subDirectories) {
+        List<File> found = new ArrayList<>();
+
+        for (File f : this.manifest.children(filePath)) {
+            if (this.isMandatorySkip(filePath, f.getName())) {
+                continue;
+            }
+
+            if (f.isFile()) {
+                found.add(f);
+                this.fileCounter.increment();
+            }
+
+            else if (!sk.isExcluded(f.getPath())) {
+                found.add(f);
+                this.directoryCounter.increment();
+                subDirectories.add(f.getPath());
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Method to read the modification time of a directory, at the finest
+     * precision the file system keeps
+     *
+     * @param filePath A directory in the file system, in canonical form
+     * @return the modification time in nanoseconds, or Long.MIN_VALUE if it could
+     *         not be read
+     */
+    private long directoryModified(String filePath) {
+        try {
+            FileTime modified = Files.getLastModifiedTime(Paths.get(filePath));
+            return modified.to(TimeUnit.NANOSECONDS);
+        }
+
+        catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Method to enlist a directory with File.listFiles(), asking the file system
+     * separately for each property of each child
+     *
+     * @param filePath       A directory in the file system, in canonical form
+     * @param subDirectories The list where the canonical paths of the eligible
+     *                       child directories are added
+     * @param known          The names of the children if already known, or
+     *                       {@code null} to list the directory
+     * @param names          The list where the names of all the children are
+     *                       added, or {@code null}
+     * @return the eligible child files and directories, or {@code null} if the
+     *         directory could not be listed
+     */
+    private List<File> enlistFiles(String filePath, List<String> subDirectories, String[] known,
+            List<String> names) {
         File currentFile = new File(filePath);
-        File[] fileList = currentFile.listFiles();
+        File[] fileList;
+        List<File> found = new ArrayList<>();
+
+        if (known == null) {
+            fileList = currentFile.listFiles();
+        }
+
+        else {
+            fileList = new File[known.length];
+
+            for (int i = 0; i < known.length; i++) {
+                fileList[i] = new File(currentFile, known[i]);
+            }
+        }
 
         // this might help in case of permission denials
         if (fileList == null) {
             this.appIO.printf("%n%n[%s] Could not find or enlist directory %s",
                     ColorText.text("FAIL", Color.BRIGHT_RED), filePath);
+            return null;
         }
 
         for (File f : fileList) {
+            if (names != null) {
+                names.add(f.getName());
+            }
+
             // windows default mandatory skip list
-            if ((f.getName().contains("$RECYCLE.BIN")) || (f.getName().equals("System Volume Information"))) {
+            if (this.isMandatorySkip(filePath, f.getName())) {
                 continue;
             }
 
             if (f.isFile()) {
-                allFiles.add(f);
-                this.fileCount++;
+                found.add(f);
+                this.fileCounter.increment();
             }
 
             else if (f.isDirectory()) {
-                if (sk.isExcluded(this.appIO.fetchCanonical(f))) {
+                String canonical = this.appIO.fetchCanonical(f);
+
+                if (sk.isExcluded(canonical)) {
                     continue;
                 }
 
                 else {
-                    allFiles.add(f);
-                    this.directoryCount++;
-                    retrieve(this.appIO.fetchCanonical(f));
+                    found.add(f);
+                    this.directoryCounter.increment();
+                    subDirectories.add(canonical);
                 }
             }
         }
+
+        return found;
+    }
+
+    /**
+     * Method to enlist a directory by streaming its entries with a
+     * DirectoryStream, and reading the BasicFileAttributes of every child with a
+     * single call. The children are returned as ScannedFile, so the attributes
+     * travel along with them to Delta and FileCopier
+     *
+     * Symbolic links are followed the same way File.isFile() and
+     * File.isDirectory() follow them
+     *
+     * @param filePath       A directory in the file system, in canonical form
+     * @param subDirectories The list where the canonical paths of the eligible
+     *                       child directories are added
+     * @param known          The names of the children if already known, or
+     *                       {@code null} to list the directory
+     * @param names          The list where the names of all the children are
+     *                       added, or {@code null}
+     * @return the eligible child files and directories, or {@code null} if the
+     *         directory could not be listed
+     */
+    private List<File> enlistAttributes(String filePath, List<String> subDirectories, String[] known,
+            List<String> names) {
+        List<File> found = new ArrayList<>();
+        Path directory = Paths.get(filePath);
+
+        if (known != null) {
+            for (String name : known) {
+                this.admit(directory.resolve(name), name, filePath, found, subDirectories, names);
+            }
+
+            return found;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path p : stream) {
+                this.admit(p, p.getFileName().toString(), filePath, found, subDirectories, names);
+            }
+        }
+
+        // this might help in case of permission denials
+        catch (IOException | DirectoryIteratorException e) {
+            this.appIO.printf("%n%n[%s] Could not find or enlist directory %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), filePath);
+            return null;
+        }
+
+        return found;
+    }
+
+    /**
+     * Method to read the attributes of a single child of a directory, and add it
+     * to the found entries if it is eligible for backup
+     *
+     * @param p              The path of the child
+     * @param name           The name of the child
+     * @param filePath       The directory containing the child, in canonical form
+     * @param found          The list where the child is added if eligible
+     * @param subDirectories The list where the canonical path of the child is
+     *                       added if it is an eligible directory
+     * @param names          The list where the name of the child is added, or
+     *                       {@code null}
+     */
+    private void admit(Path p, String name, String filePath, List<File> found, List<String> subDirectories,
+            List<String> names) {
+        if (names != null) {
+            names.add(name);
+        }
+
+        // windows default mandatory skip list
+        if (this.isMandatorySkip(filePath, name)) {
+            return;
+        }
+
+        BasicFileAttributes attributes;
+        String canonical;
+
+        try {
+            attributes = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+            // a child that is not a link is canonical already, as its parent is
+            if (attributes.isSymbolicLink()) {
+                attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                canonical = p.toRealPath().toString();
+            }
+
+            else {
+                canonical = p.toString();
+            }
+        }
+
+        // broken links and entries removed since the listing are neither files nor
+        // directories
+        catch (IOException e) {
+            return;
+        }
+
+        if (attributes.isRegularFile()) {
+            found.add(new ScannedFile(p.toString(), attributes, canonical));
+            this.fileCounter.increment();
+        }
+
+        else if (attributes.isDirectory()) {
+            if (sk.isExcluded(canonical)) {
+                return;
+            }
+
+            found.add(new ScannedFile(p.toString(), attributes, canonical));
+            this.directoryCounter.increment();
+            subDirectories.add(canonical);
+        }
+    }
+
+    /**
+     * Method to check if a file or directory is in the windows default mandatory
+     * skip list, or is the directory where Tranquil keeps its own files, or a
+     * file Tranquil is still copying to a backup location
+     *
+     * @param filePath The directory containing the file or directory
+     * @param name     The name of the file or directory to be checked
+     * @return <code>true</code> if it must never be backed up, <code>false</code>
+     *         otherwise
+     */
+    private boolean isMandatorySkip(String filePath, String name) {
+        return isMandatorySkip(this.basePath, filePath, name);
+    }
+
+    /**
+     * Method to check if a file or directory is in the windows default mandatory
+     * skip list, or is the directory where Tranquil keeps its own files, or a
+     * file Tranquil is still copying to a backup location
+     *
+     * @param basePath The directory from where the retrieval is done
+     * @param filePath The directory containing the file or directory
+     * @param name     The name of the file or directory to be checked
+     * @return <code>true</code> if it must never be backed up, <code>false</code>
+     *         otherwise
+     */
+    static boolean isMandatorySkip(String basePath, String filePath, String name) {
+        if ((name.contains("$RECYCLE.BIN")) || (name.equals("System Volume Information"))) {
+            return true;
+        }
+
+        // a copy interrupted halfway
+        if (FileTransfer.isPart(name) && destinations.contains(basePath)) {
+            return true;
+        }
+
+        return name.equals(Manifest.DIRECTORY) && filePath.equals(basePath);
+    }
+
+    /**
+     * Task to enlist a single directory. It adds the eligible children to allFiles
+     * or to the index, and forks a new task for every child directory
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private String filePath;
+        private int directory;
+
+        DirectoryTask(String filePath, int directory) {
+            this.filePath = filePath;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<String> subDirectories = new ArrayList<>();
+            List<File> found = enlist(this.filePath, subDirectories);
+            List<DirectoryTask> subTasks = new ArrayList<>(subDirectories.size());
+
+            store(this.directory, found, subDirectories, (d, id) -> subTasks.add(new DirectoryTask(d, id)));
+
+            invokeAll(subTasks);
+        }
     }
 }
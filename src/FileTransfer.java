@@ -0,0 +1,1142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves the bytes of a file from the source to the backup location.
+ *
+ * With copy.method=channel the bytes of a regular file go through
+ * FileChannel.transferTo, in chunks of copy.chunkSize bytes, so the kernel can
+ * copy them with copy_file_range or sendfile without bringing them into the
+ * heap. With copy.method=pipeline a reader thread fills a ring of
+ * copy.pipelineDepth direct buffers while the copying thread writes them out,
+ * so a source and a destination on different drives are both busy all the
+ * time. The metadata of the file is applied to the copy afterwards. With
+ * copy.reflink the file is cloned first, where the file system of the backup
+ * location supports it, so that both share the same blocks until one changes.
+ *
+ * A large file that is already at the destination, like a disk image of a
+ * virtual machine, is compared with its copy block by block instead, and only
+ * the blocks that differ are written, in place. The times of the copy are set
+ * last, so a copy left half updated is still older than the original, and is
+ * compared again by the next backup.
+ *
+ * With copy.hash the checksum of a file is computed from the bytes as they go
+ * by, which then go through the heap instead of transferTo, and with
+ * copy.verify the copy is read back and its checksum compared before it
+ * replaces the old copy, which is why a file is not patched in place then.
+ *
+ * Any other file is copied to a new file next to the old copy, which is then
+ * renamed over it, so a copy is either the old one or complete. With
+ * copy.durability=batch the new file is synced to the disk before it is
+ * renamed, and its directory with the group of the backup plan. With
+ * copy.sparseMinSize, a large file, like a thin provisioned disk image, is read
+ * in blocks instead, whatever the copy.method, and the blocks of zeros are
+ * skipped instead of written, so its copy keeps the holes of the original.
+ * Directories and other special files are copied by Files.copy as before
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class FileTransfer {
+    /**
+     * The beginning of the name of a file being copied. It is renamed to the name
+     * of the copy only once complete, so an interrupted copy never looks like a
+     * copy
+     */
+    public static final String PART_PREFIX = ".tranquil-part-";
+
+    // the number of the last file being copied, which names it
+    private static final AtomicLong parts = new AtomicLong();
+
+    // files smaller than this are not worth starting a process to clone them
+    private static final long REFLINK_MIN_SIZE = 1024 * 1024;
+
+    // copies smaller than this are copied again whole, even if the file only grew
+    private static final long APPEND_MIN_SIZE = 64 * 1024;
+
+    // the number of blocks compared, besides the first and the last, when a copy
+    // is sampled to check that the file only grew
+    private static final int SAMPLES = 16;
+
+    // the size of the blocks of zeros left as holes in a sparse copy, the block
+    // size of most file systems
+    private static final int HOLE_SIZE = 4096;
+
+    // the bytes read at a time by a sparse copy
+    private static final int SPARSE_CHUNK = 256 * HOLE_SIZE;
+
+    // the buffer the reader of a pipeline hands over when it fails
+    private static final ByteBuffer FAILED = ByteBuffer.allocate(0);
+
+    // the readers of the pipelines, which end with the app
+    private static final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "pipeline reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // the direct buffers of the pipelines, kept for the next copies as they are
+    // expensive to allocate
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    // the longest a clone may take before it is given up
+    private static final long REFLINK_TIMEOUT_SECONDS = 60;
+
+    // true if the bytes of regular files are moved by FileChannel.transferTo
+    private boolean channel;
+
+    // the number of bytes moved by a single transferTo call
+    private long chunkSize;
+
+    // true if the bytes of regular files are read and written by two threads,
+    // with the size and the number of the buffers between them
+    private boolean pipeline;
+    private int pipelineBufferSize;
+    private int pipelineDepth;
+
+    // files of at least this size are updated in place, 0 to always copy them
+    private long patchMinSize;
+
+    // the size of the blocks compared when a file is updated in place
+    private int blockSize;
+
+    // files of at least this size are copied sparsely, 0 to never
+    private long sparseMinSize;
+
+    // how a copy is checked to still be the beginning of a file that grew, "sample",
+    // "full" or "off"
+    private String appendCheck;
+
+    // limits the bytes read and written every second
+    private Throttle throttle;
+
+    // the checksum computed while copying, null for none, and true if the copies
+    // are read back to check it
+    private String hashAlgorithm;
+    private boolean verify;
+
+    // true while cloning is to be tried, turned off after the first failure as the
+    // rest of the backup is on the same file systems
+    private volatile boolean reflink;
+
+    // the reads and writes that may go on at the same time, shared by the copies
+    private CopyPermits permits;
+
+    // true if a new copy is synced to the disk before it replaces the old one, with
+    // copy.durability=batch
+    private boolean durable;
+
+    /**
+     * Constructor to read the copy configuration from the settings
+     */
+    public FileTransfer() {
+        Settings settings = Settings.getInstance();
+
+        String method = settings.get("copy.method");
+        this.pipeline = method.equalsIgnoreCase("pipeline");
+        this.channel = method.equalsIgnoreCase("channel") || this.pipeline;
+        this.chunkSize = Math.max(settings.getLong("copy.chunkSize"), 64 * 1024);
+        this.pipelineBufferSize = (int) Math.min(Math.max(settings.getLong("copy.pipelineBufferSize"), 64 * 1024),
+                64 * 1024 * 1024);
+        this.pipelineDepth = Math.max(settings.getInt("copy.pipelineDepth"), 2);
+        this.reflink = this.channel && settings.getBoolean("copy.reflink")
+                && System.getProperty("os.name").toLowerCase().contains("linux");
+        this.patchMinSize = settings.getLong("copy.patchMinSize");
+        this.blockSize = (int) Math.min(Math.max(settings.getLong("copy.patchBlockSize"), 4096), 64 * 1024 * 1024);
+        this.appendCheck = settings.get("copy.appendCheck").toLowerCase();
+        this.sparseMinSize = settings.getLong("copy.sparseMinSize");
+        this.throttle = Throttle.getInstance();
+        this.permits = CopyPermits.NONE;
+        this.durable = settings.get("copy.durability").equalsIgnoreCase("batch");
+
+        try {
+            ContentHash hash = ContentHash.of(settings.get("copy.hash"));
+            this.hashAlgorithm = hash == null ? null : hash.getAlgorithm();
+        }
+
+        catch (IllegalArgumentException e) {
+            AppIO.getInstance().printf("%n%n[%s] %s, the copies are not checksummed",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+        }
+
+        this.verify = this.hashAlgorithm != null && settings.getBoolean("copy.verify");
+    }
+
+    /**
+     * Method to check if a name is one given to a copy being written, the prefix
+     * and a number in hexadecimal
+     *
+     * @param name the name of a file
+     * @return <code>true</code> if the name is that of a copy being written
+     */
+    public static boolean isPart(String name) {
+        if (!name.startsWith(PART_PREFIX) || name.length() == PART_PREFIX.length()) {
+            return false;
+        }
+
+        for (int i = PART_PREFIX.length(); i < name.length(); i++) {
+            if ("0123456789abcdef".indexOf(name.charAt(i)) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to limit the reads and the writes of the copies going on at the same
+     * time, for copies made by several workers
+     *
+     * @param permits the limits, shared by every copy
+     */
+    public void limit(CopyPermits permits) {
+        this.permits = permits;
+    }
+
+    /**
+     * What a copy wrote to the destination, and what it did not have to write
+     */
+    public static class Result {
+        private long size;
+        private long unchanged;
+        private long holes;
+        private ContentHash hash;
+
+        /**
+         * @param size      the size of the file
+         * @param unchanged the bytes that were the same at the destination already
+         * @param holes     the bytes of zeros left as holes in the copy
+         * @param hash      the checksum of the file, or {@code null}
+         */
+        private Result(long size, long unchanged, long holes, ContentHash hash) {
+            this.size = size;
+            this.unchanged = unchanged;
+            this.holes = holes;
+            this.hash = hash;
+        }
+
+        /**
+         * @return the size of the file
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return the bytes that were the same at the destination already, and were
+         *         not written again
+         */
+        public long getUnchanged() {
+            return this.unchanged;
+        }
+
+        /**
+         * @return the bytes of zeros that were left as holes in the copy
+         */
+        public long getHoles() {
+            return this.holes;
+        }
+
+        /**
+         * @return the bytes written to the destination
+         */
+        public long getWritten() {
+            return this.size - this.unchanged - this.holes;
+        }
+
+        /**
+         * @return the checksum of the bytes copied, or {@code null} if it was not
+         *         computed, e.g. for a file of which only the new end was copied
+         */
+        public ContentHash getHash() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * Method to copy a file or directory, replacing whatever is at the
+     * destination, along with its attributes
+     *
+     * @param sp the path of the file or directory at the source
+     * @param dp the path where it is to be copied at the destination
+     * @return what was written, and what was not
+     * @throws IOException if it could not be copied
+     */
+    public Result copy(Path sp, Path dp) throws IOException {
+        if (!Files.isRegularFile(sp)) {
+            Files.copy(sp, dp, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+            return new Result(0, 0, 0, null);
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(sp, BasicFileAttributes.class);
+        ContentHash hash = ContentHash.of(this.hashAlgorithm);
+
+        if (this.isPatchable(dp)) {
+            long unchanged = this.append(sp, dp, attributes.size());
+
+            // the beginning of the file was not read, so it has no checksum
+            if (unchanged >= 0) {
+                hash = null;
+            }
+
+            // a copy patched in place cannot be checked before it replaces the old one
+            else if (this.patchMinSize > 0 && attributes.size() >= this.patchMinSize && !this.verify) {
+                unchanged = this.patch(sp, dp, hash);
+            }
+
+            if (unchanged >= 0) {
+                this.copyMetadata(sp, dp, attributes);
+                return new Result(attributes.size(), unchanged, 0, hash);
+            }
+        }
+
+        // a directory in the way is replaced only if it is empty, as by Files.copy
+        if (Files.isDirectory(dp, LinkOption.NOFOLLOW_LINKS)) {
+            Files.delete(dp);
+        }
+
+        Path part = dp.resolveSibling(PART_PREFIX + Long.toHexString(parts.incrementAndGet()));
+        boolean sparse = this.sparseMinSize > 0 && attributes.size() >= this.sparseMinSize;
+        long holes = 0;
+
+        try {
+            // Files.copy cannot be held back while it runs, so a throttled copy goes
+            // through transferTo a chunk at a time instead
+            if (!this.channel && !sparse && hash == null && !this.throttle.isLimitingBytes()) {
+                CopyPermits.Permit permit = this.permits.readingAndWriting();
+
+                try {
+                    Files.copy(sp, part, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                finally {
+                    permit.close();
+                }
+            }
+
+            else {
+                Files.deleteIfExists(part);
+
+                // a clone shares the blocks of the original, holes included, but does
+                // not read them for a checksum
+                if (!this.channel || !this.reflink || hash != null || attributes.size() < REFLINK_MIN_SIZE
+                        || !this.clone(sp, part)) {
+                    if (sparse) {
+                        holes = this.sparse(sp, part, hash);
+                    }
+
+                    // a file of a buffer or two is read before the reader would start
+                    else if (this.pipeline && attributes.size() > 2L * this.pipelineBufferSize) {
+                        this.pipeline(sp, part, hash);
+                    }
+
+                    else if (hash != null) {
+                        this.stream(sp, part, hash);
+                    }
+
+                    else {
+                        this.transfer(sp, part);
+                    }
+                }
+
+                this.copyMetadata(sp, part, attributes);
+            }
+
+            this.verify(part, hash);
+
+            // the bytes reach the disk before the name does, so a crash cannot leave a
+            // copy under its name whose bytes were never written
+            if (this.durable) {
+                FileUtil.force(part);
+            }
+
+            FileUtil.replaceAtomically(part, dp);
+        }
+
+        catch (IOException e) {
+            deleteQuietly(part);
+            throw e;
+        }
+
+        return new Result(attributes.size(), 0, holes, hash);
+    }
+
+    /**
+     * Method to remove what is left of a copy that failed
+     *
+     * @param part the incomplete copy
+     */
+    private static void deleteQuietly(Path part) {
+        try {
+            Files.deleteIfExists(part);
+        }
+
+        catch (IOException e) {
+            // left behind, and never backed up nor listed
+        }
+    }
+
+    /**
+     * Method to check if the copy of a file can be updated in place. A copy with
+     * other hard links is replaced instead, as the other names, e.g. in an older
+     * backup, must keep the old content
+     *
+     * @param dp the path of the copy at the destination
+     * @return <code>true</code> if dp is a regular file of its own
+     */
+    private boolean isPatchable(Path dp) {
+        try {
+            if (!Files.isRegularFile(dp, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+
+            try {
+                return (Integer) Files.getAttribute(dp, "unix:nlink", LinkOption.NOFOLLOW_LINKS) <= 1;
+            }
+
+            // no hard links to count
+            catch (UnsupportedOperationException | IllegalArgumentException e) {
+                return true;
+            }
+        }
+
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to write only the end of a file that grew, like a log, when its copy
+     * is still the beginning of the file. The copy is checked as configured by
+     * copy.appendCheck, comparing every block by default. Sampling the blocks
+     * misses a file that grew and also changed between them, whose copy then
+     * keeps the old bytes with the new modification time
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path of the copy at the destination
+     * @param size the size of the file at the source
+     * @return the size of the copy, which was not written again, or -1 if the
+     *         file did not just grow and has to be copied some other way
+     * @throws IOException if either file could not be read, or the copy written
+     */
+    private long append(Path sp, Path dp, long size) throws IOException {
+        if (this.appendCheck.equals("off")) {
+            return -1;
+        }
+
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long copySize = out.size();
+
+            if (copySize < APPEND_MIN_SIZE || copySize >= size || !this.isPrefix(in, out, copySize)) {
+                return -1;
+            }
+
+            out.position(copySize);
+
+            for (long position = copySize; position < size;) {
+                long chunk = Math.min(this.chunkSize, size - position);
+                this.throttle.acquireBytes(chunk);
+                long moved;
+
+                CopyPermits.Permit permit = this.permits.readingAndWriting();
+
+                try {
+                    moved = in.transferTo(position, chunk, out);
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                // the file was truncated while being copied, the rest is gone
+                if (moved <= 0) {
+                    break;
+                }
+
+                position += moved;
+            }
+
+            return copySize;
+        }
+    }
+
+    /**
+     * Method to check if the copy of a file is the beginning of the file, either
+     * comparing every block of the copy, or only the first, the last and some
+     * spread in between
+     *
+     * @param in     the file at the source
+     * @param out    the copy at the destination
+     * @param length the size of the copy
+     * @return <code>true</code> if the blocks compared are the same in both
+     * @throws IOException if either file could not be read
+     */
+    private boolean isPrefix(FileChannel in, FileChannel out, long length) throws IOException {
+        int block = (int) Math.min(this.blockSize, length);
+        ByteBuffer original = ByteBuffer.allocateDirect(block);
+        ByteBuffer copy = ByteBuffer.allocateDirect(block);
+
+        long blocks = (length + block - 1) / block;
+        long step = this.appendCheck.equals("full") ? 1 : Math.max(1, blocks / SAMPLES);
+
+        for (long k = 0; k < blocks; k += step) {
+            if (!this.isSameBlock(in, out, original, copy, k * block, length)) {
+                return false;
+            }
+        }
+
+        // the last block, where a file rewritten rather than grown differs first
+        return (blocks - 1) % step == 0
+                || this.isSameBlock(in, out, original, copy, (blocks - 1) * block, length);
+    }
+
+    /**
+     * Method to compare the block of a file and of its copy at a position
+     *
+     * @param in       the file at the source
+     * @param out      the copy at the destination
+     * @param original the buffer for the block of the file
+     * @param copy     the buffer for the block of the copy, as large as original
+     * @param position the offset of the block
+     * @param length   the size of the copy, where the last block ends
+     * @return <code>true</code> if the block is the same in both
+     * @throws IOException if either file could not be read
+     */
+    private boolean isSameBlock(FileChannel in, FileChannel out, ByteBuffer original, ByteBuffer copy,
+            long position, long length) throws IOException {
+        int n = (int) Math.min(original.capacity(), length - position);
+        return this.readSource(in, original, position, n) && this.readCopy(out, copy, position, n)
+                && original.equals(copy);
+    }
+
+    /**
+     * Method to update the copy of a file in place, comparing both one block at a
+     * time and writing only the blocks that differ. The copy is cut or extended to
+     * the size of the original.
+     *
+     * Both files are local, so a block found at another offset, as rsync would
+     * look for with a rolling checksum, would have to be written all the same.
+     * Only the blocks unchanged at their own offset save anything
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path of the copy at the destination
+     * @param hash the checksum of the file, or {@code null}
+     * @return the number of bytes that were not written
+     * @throws IOException if either file could not be read, or the copy written
+     */
+    private long patch(Path sp, Path dp, ContentHash hash) throws IOException {
+        long unchanged = 0;
+
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer original = ByteBuffer.allocateDirect(this.blockSize);
+            ByteBuffer copy = ByteBuffer.allocateDirect(this.blockSize);
+            long copySize = out.size();
+            long position = 0;
+
+            while (this.readSource(in, original, position, this.blockSize)) {
+                int length = original.remaining();
+                this.throttle.acquireBytes(length);
+
+                if (hash != null) {
+                    hash.update(original);
+                }
+
+                CopyPermits.Permit permit = this.permits.writing();
+
+                try {
+                    if (position + length <= copySize && read(out, copy, position, length)
+                            && original.equals(copy)) {
+                        unchanged += length;
+                    }
+
+                    else {
+                        for (long p = position; original.hasRemaining();) {
+                            p += out.write(original, p);
+                        }
+                    }
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                position += length;
+            }
+
+            if (copySize > position) {
+                out.truncate(position);
+            }
+        }
+
+        return unchanged;
+    }
+
+    /**
+     * Method to read the block of a file at a position, as much of it as the file
+     * has
+     *
+     * @param channel  the file
+     * @param buffer   the buffer to read into, flipped for reading afterwards
+     * @param position the offset of the block in the file
+     * @param length   the size of the block, at most the capacity of the buffer
+     * @return <code>false</code> if there is nothing left at the position
+     * @throws IOException if the file could not be read
+     */
+    private static boolean read(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+
+            if (n < 0) {
+                break;
+            }
+        }
+
+        buffer.flip();
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Method to read the block of a file at the source, once a read is permitted
+     *
+     * @param channel  the file
+     * @param buffer   the buffer to read into, flipped for reading afterwards
+     * @param position the offset of the block in the file
+     * @param length   the size of the block, at most the capacity of the buffer
+     * @return <code>false</code> if there is nothing left at the position
+     * @throws IOException if the file could not be read
+     */
+    private boolean readSource(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        CopyPermits.Permit permit = this.permits.reading();
+
+        try {
+            return read(channel, buffer, position, length);
+        }
+
+        finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Method to read the block of a copy at the destination, once a write is
+     * permitted, as it keeps the backup location busy all the same
+     *
+     * @param channel  the copy
+     * @param buffer   the buffer to read into, flipped for reading afterwards
+     * @param position the offset of the block in the copy
+     * @param length   the size of the block, at most the capacity of the buffer
+     * @return <code>false</code> if there is nothing left at the position
+     * @throws IOException if the copy could not be read
+     */
+    private boolean readCopy(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        CopyPermits.Permit permit = this.permits.writing();
+
+        try {
+            return read(channel, buffer, position, length);
+        }
+
+        finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Method to move the bytes of a regular file to a new file at the
+     * destination, one chunk at a time
+     *
+     * @param sp the path of the file at the source
+     * @param dp the path of the new file at the destination
+     * @throws IOException if the file could not be read or written
+     */
+    private void transfer(Path sp, Path dp) throws IOException {
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long chunk = Math.min(this.chunkSize, size - position);
+                this.throttle.acquireBytes(chunk);
+                long moved;
+
+                CopyPermits.Permit permit = this.permits.readingAndWriting();
+
+                try {
+                    moved = in.transferTo(position, chunk, out);
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                // the file was truncated while being copied, the rest is gone
+                if (moved <= 0) {
+                    break;
+                }
+
+                position += moved;
+            }
+        }
+    }
+
+    /**
+     * Method to copy a regular file to a new file at the destination through a
+     * buffer, computing its checksum on the way
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path of the new file at the destination
+     * @param hash the checksum of the file
+     * @throws IOException if the file could not be read or written
+     */
+    private void stream(Path sp, Path dp, ContentHash hash) throws IOException {
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(this.blockSize);
+
+            for (long position = 0; this.readSource(in, buffer, position, this.blockSize);
+                    position += buffer.limit()) {
+                this.throttle.acquireBytes(buffer.limit());
+                hash.update(buffer);
+
+                CopyPermits.Permit permit = this.permits.writing();
+
+                try {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+
+                finally {
+                    permit.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to read a copy back and compare its checksum with the checksum of
+     * the file, if copy.verify is set. The copy is read through the cache of the
+     * system, where it most likely still is
+     *
+     * @param copy the path of the copy
+     * @param hash the checksum of the file, or {@code null} if it has none
+     * @throws IOException if the copy could not be read, or does not match
+     */
+    private void verify(Path copy, ContentHash hash) throws IOException {
+        if (!this.verify || hash == null) {
+            return;
+        }
+
+        String expected = hash.hex();
+        ContentHash actual = hash.fresh();
+
+        try (FileChannel in = FileChannel.open(copy, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(this.blockSize);
+
+            for (long position = 0; this.readCopy(in, buffer, position, this.blockSize);
+                    position += buffer.limit()) {
+                this.throttle.acquireBytes(buffer.limit());
+                actual.update(buffer);
+            }
+        }
+
+        if (!actual.hex().equals(expected)) {
+            throw new IOException("The copy read back does not match the checksum of the file");
+        }
+    }
+
+    /**
+     * Method to move the bytes of a regular file to a new file at the
+     * destination through a ring of buffers, filled by a reader thread while this
+     * thread writes them out
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path of the new file at the destination
+     * @param hash the checksum of the file, computed by the reader, or
+     *             {@code null}
+     * @throws IOException if the file could not be read or written
+     */
+    private void pipeline(Path sp, Path dp, ContentHash hash) throws IOException {
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(this.pipelineDepth);
+        BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(this.pipelineDepth + 1);
+
+        for (int i = 0; i < this.pipelineDepth; i++) {
+            free.add(this.takeBuffer());
+        }
+
+        Future<?> reader = readers.submit(() -> this.readInto(sp, free, filled, hash));
+        boolean complete = false;
+
+        try (FileChannel out = FileChannel.open(dp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (true) {
+                ByteBuffer buffer = filled.take();
+
+                // the end of the file, or the reader failed and tells why below
+                if (!buffer.hasRemaining()) {
+                    filled.add(buffer);
+                    break;
+                }
+
+                CopyPermits.Permit permit = this.permits.writing();
+
+                try {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                free.add(buffer);
+            }
+
+            reader.get();
+            complete = true;
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The copy was interrupted", e);
+        }
+
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+
+        finally {
+            if (!complete) {
+                reader.cancel(true);
+            }
+
+            // the buffers the reader still had are lost if it was stopped
+            for (ByteBuffer buffer; (buffer = free.poll()) != null || (buffer = filled.poll()) != null;) {
+                if (buffer != FAILED) {
+                    buffers.add(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to read a file into the buffers of a pipeline, handing over an empty
+     * buffer at the end of the file
+     *
+     * @param sp     the path of the file at the source
+     * @param free   the buffers that may be filled
+     * @param filled the buffers filled, to be written in the same order
+     * @param hash   the checksum of the file, or {@code null}
+     * @return nothing, so the method can be submitted as a Callable, which may
+     *         throw
+     * @throws IOException          if the file could not be read
+     * @throws InterruptedException if the copy was given up
+     */
+    private Void readInto(Path sp, BlockingQueue<ByteBuffer> free, BlockingQueue<ByteBuffer> filled,
+            ContentHash hash) throws IOException, InterruptedException {
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ)) {
+            boolean end = false;
+
+            while (!end) {
+                ByteBuffer buffer = free.take();
+                buffer.clear();
+
+                CopyPermits.Permit permit = this.permits.reading();
+
+                try {
+                    while (buffer.hasRemaining()) {
+                        if (in.read(buffer) < 0) {
+                            end = true;
+                            break;
+                        }
+                    }
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                buffer.flip();
+                this.throttle.acquireBytes(buffer.remaining());
+
+                if (hash != null) {
+                    hash.update(buffer);
+                }
+
+                // an empty buffer ends the copy already, and the buffer may be written
+                // out as soon as it is handed over
+                boolean last = end && buffer.hasRemaining();
+                filled.put(buffer);
+
+                if (last) {
+                    filled.put(free.take().clear().flip());
+                }
+            }
+        }
+
+        catch (IOException e) {
+            filled.put(FAILED);
+            throw e;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a direct buffer of copy.pipelineBufferSize bytes, kept from an
+     *         earlier copy if there is one
+     */
+    private ByteBuffer takeBuffer() {
+        for (ByteBuffer buffer; (buffer = buffers.poll()) != null;) {
+            if (buffer.capacity() == this.pipelineBufferSize) {
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(this.pipelineBufferSize);
+    }
+
+    /**
+     * Method to copy a regular file to a new file at the destination, skipping
+     * the blocks of zeros, which the file system of the destination leaves as
+     * holes that take no space. Java cannot ask where the holes of the original
+     * are, as with SEEK_HOLE, so every block is read and checked for zeros
+     *
+     * @param sp   the path of the file at the source
+     * @param dp   the path of the new file at the destination
+     * @param hash the checksum of the file, or {@code null}
+     * @return the number of bytes left as holes
+     * @throws IOException if the file could not be read or written
+     */
+    private long sparse(Path sp, Path dp, ContentHash hash) throws IOException {
+        long holes = 0;
+
+        try (FileChannel in = FileChannel.open(sp, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                        StandardOpenOption.SPARSE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SPARSE_CHUNK);
+            long position = 0;
+
+            while (this.readSource(in, buffer, position, SPARSE_CHUNK)) {
+                int length = buffer.limit();
+                this.throttle.acquireBytes(length);
+
+                if (hash != null) {
+                    hash.update(buffer);
+                }
+
+                // the blocks of data from start up to the block of zeros at end are
+                // written together
+                CopyPermits.Permit permit = this.permits.writing();
+
+                try {
+                    for (int start = 0, end = 0; end < length; end += HOLE_SIZE) {
+                        int next = Math.min(end + HOLE_SIZE, length);
+
+                        if (isZero(buffer, end, next)) {
+                            write(out, buffer, start, end, position);
+                            holes += next - end;
+                            start = next;
+                        }
+
+                        else if (next == length) {
+                            write(out, buffer, start, next, position);
+                        }
+                    }
+                }
+
+                finally {
+                    permit.close();
+                }
+
+                position += length;
+            }
+
+            // a file ending in a hole gets its size from its last byte
+            if (out.size() < position) {
+                out.write(ByteBuffer.allocate(1), position - 1);
+                holes--;
+            }
+        }
+
+        return holes;
+    }
+
+    /**
+     * Method to check if a part of a buffer is all zeros
+     *
+     * @param buffer the buffer
+     * @param from   the offset of the first byte
+     * @param to     the offset after the last byte
+     * @return <code>true</code> if every byte is zero
+     */
+    private static boolean isZero(ByteBuffer buffer, int from, int to) {
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                return false;
+            }
+        }
+
+        for (; i < to; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to write a part of a buffer to a file
+     *
+     * @param out      the file
+     * @param buffer   the buffer, whose position and limit are left as they were
+     * @param from     the offset of the first byte in the buffer
+     * @param to       the offset after the last byte in the buffer
+     * @param position the offset in the file of the start of the buffer
+     * @throws IOException if the file could not be written
+     */
+    private static void write(FileChannel out, ByteBuffer buffer, int from, int to, long position)
+            throws IOException {
+        if (from >= to) {
+            return;
+        }
+
+        ByteBuffer part = buffer.duplicate();
+        part.limit(to).position(from);
+
+        while (part.hasRemaining()) {
+            out.write(part, position + part.position());
+        }
+    }
+
+    /**
+     * Method to clone a file, sharing its blocks with the copy, with
+     * "cp --reflink=always". Cloning fails unless both are on the same file system
+     * and it supports cloning, e.g. Btrfs or XFS
+     *
+     * @param sp the path of the file at the source
+     * @param dp the path of the new file at the destination
+     * @return <code>true</code> if the file was cloned
+     */
+    private boolean clone(Path sp, Path dp) {
+        ProcessBuilder pb = new ProcessBuilder("cp", "--reflink=always", "--", sp.toString(), dp.toString());
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        try {
+            CopyPermits.Permit permit = this.permits.readingAndWriting();
+
+            try {
+                Process p = pb.start();
+
+                if (p.waitFor(REFLINK_TIMEOUT_SECONDS, TimeUnit.SECONDS) && p.exitValue() == 0) {
+                    return true;
+                }
+
+                p.destroyForcibly();
+            }
+
+            finally {
+                permit.close();
+            }
+        }
+
+        catch (IOException e) {
+            // no cp to clone with
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.reflink = false;
+
+        // whatever a failed clone left behind is copied over
+        deleteQuietly(dp);
+        return false;
+    }
+
+    /**
+     * Method to give the copy of a file the attributes of the original, as far as
+     * the file system of the destination keeps them. The owner is kept only if
+     * the user may change it, as with Files.copy
+     *
+     * @param sp         the path of the file at the source
+     * @param dp         the path of the copy at the destination
+     * @param attributes the attributes of the file at the source
+     * @throws IOException if the times of the copy could not be set
+     */
+    private void copyMetadata(Path sp, Path dp, BasicFileAttributes attributes) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(dp, PosixFileAttributeView.class,
+                LinkOption.NOFOLLOW_LINKS);
+        DosFileAttributeView dos = Files.getFileAttributeView(dp, DosFileAttributeView.class,
+                LinkOption.NOFOLLOW_LINKS);
+
+        if (posix != null) {
+            PosixFileAttributes source = Files.readAttributes(sp, PosixFileAttributes.class);
+
+            try {
+                posix.setOwner(source.owner());
+                posix.setGroup(source.group());
+            }
+
+            catch (IOException e) {
+                // only the superuser may give away a file
+            }
+
+            posix.setPermissions(source.permissions());
+        }
+
+        else if (dos != null) {
+            DosFileAttributes source = Files.readAttributes(sp, DosFileAttributes.class);
+            dos.setArchive(source.isArchive());
+            dos.setHidden(source.isHidden());
+            dos.setSystem(source.isSystem());
+        }
+
+        Files.getFileAttributeView(dp, BasicFileAttributeView.class).setTimes(attributes.lastModifiedTime(),
+                attributes.lastAccessTime(), attributes.creationTime());
+
+        // read-only last, or the times could not be set any more
+        if (posix == null && dos != null) {
+            dos.setReadOnly(Files.readAttributes(sp, DosFileAttributes.class).isReadOnly());
+        }
+    }
+}
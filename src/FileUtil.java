@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for writing the files of Tranquil itself, in the working directory
+ * and at the backup locations, so that a crash never leaves one of them half
+ * written
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class FileUtil {
+    /**
+     * Private constructor to restrict instantiating by foreign functions
+     */
+    private FileUtil() {
+    }
+
+    /**
+     * Method to move a file written next to another over it, in a single step
+     * where the file system allows it, so that a crash leaves either the old file
+     * or the new one
+     *
+     * @param temp   the file just written
+     * @param target the file it replaces
+     * @throws IOException if the file could not be moved
+     */
+    public static void replaceAtomically(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method to sync a file or directory to the disk
+     *
+     * @param path the file or directory
+     * @throws IOException if it could not be synced
+     */
+    public static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+
+        // some systems sync only what was opened for writing
+        catch (IOException e) {
+            if (Files.isDirectory(path)) {
+                throw e;
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+}
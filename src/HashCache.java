@@ -0,0 +1,266 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The checksums of the contents of files, remembered between backups so that a
+ * file is not read again while it is unchanged.
+ *
+ * A checksum is kept by the identity of its file, the device and the inode
+ * where the file system has them, and only holds while the file has the same
+ * size and modification time as when it was read. A file modified within two
+ * seconds of being read may change again within the same tick of its clock, so
+ * its checksum is not kept.
+ *
+ * The cache is kept in the file "hashCache" in the working directory, and
+ * holds at most delta.hashCacheSize checksums, the least recently used being
+ * dropped first
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class HashCache {
+    // the first int of the cache file, "TQC1"
+    private static final int MAGIC = 0x54514331;
+
+    private AppIO appIO;
+
+    private File cacheFile;
+
+    // the name of the checksums kept
+    private String algorithm;
+
+    // the checksums by the identity of their file, the least recently used first
+    private LinkedHashMap<String, Cached> entries;
+
+    // true if a checksum was added since the cache was read
+    private boolean changed;
+
+    private LongAdder hits;
+    private LongAdder misses;
+
+    /**
+     * Constructor to read the checksums remembered by the last backups
+     *
+     * @param algorithm the name of the checksums, those of another are dropped
+     * @param capacity  the most checksums kept
+     */
+    public HashCache(String algorithm, int capacity) {
+        int limit = Math.max(capacity, 16);
+
+        this.appIO = AppIO.getInstance();
+        this.cacheFile = new File("hashCache");
+        this.algorithm = algorithm;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return this.size() > limit;
+            }
+        };
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+
+        if (this.cacheFile.isFile()) {
+            this.read();
+        }
+    }
+
+    /**
+     * @param path       the path of a file
+     * @param attributes the attributes of the file
+     * @return the checksum of the file, or {@code null} if it is not known for
+     *         its current size and modification time
+     */
+    public synchronized String get(Path path, BasicFileAttributes attributes) {
+        Cached e = this.entries.get(identity(path, attributes));
+
+        if (e != null && e.size == attributes.size()
+                && e.lastModified == attributes.lastModifiedTime().toMillis()) {
+            this.hits.increment();
+            return e.checksum;
+        }
+
+        this.misses.increment();
+        return null;
+    }
+
+    /**
+     * Method to remember the checksum of a file, unless it was modified too
+     * shortly before it was read
+     *
+     * @param path       the path of the file
+     * @param attributes the attributes of the file when it was read
+     * @param checksum   the checksum in hexadecimal
+     * @param read       when the file started being read, in milliseconds
+     */
+    public synchronized void put(Path path, BasicFileAttributes attributes, String checksum, long read) {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        if (lastModified > read - ScanState.RACY_MILLIS) {
+            return;
+        }
+
+        this.entries.put(identity(path, attributes), new Cached(attributes.size(), lastModified, checksum));
+        this.changed = true;
+    }
+
+    /**
+     * Method to remember that a file whose checksum is known got another
+     * modification time
+     *
+     * @param path         the path of the file
+     * @param attributes   the attributes of the file before
+     * @param lastModified the new modification time in milliseconds
+     */
+    public synchronized void touch(Path path, BasicFileAttributes attributes, long lastModified) {
+        String key = identity(path, attributes);
+        Cached e = this.entries.get(key);
+
+        if (e != null) {
+            this.entries.put(key, new Cached(e.size, lastModified, e.checksum));
+            this.changed = true;
+        }
+    }
+
+    /**
+     * @return number of checksums found in the cache
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return number of checksums not found in the cache
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @param path       the path of a file
+     * @param attributes the attributes of the file
+     * @return what tells the file apart from every other, whatever its path
+     */
+    private static String identity(Path path, BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : path.toAbsolutePath().toString();
+    }
+
+    /**
+     * Method to write the cache, if a checksum was added to it. The cache is
+     * written to a temporary file first and then moved over the old one
+     *
+     * @return <code>true</code> if the cache is saved
+     */
+    public synchronized boolean save() {
+        if (!this.changed) {
+            return true;
+        }
+
+        File temp = new File(this.cacheFile.getPath() + ".tmp");
+
+        // the least recently used first, as they are read back in this order
+        List<Map.Entry<String, Cached>> entries = new ArrayList<>(this.entries.entrySet());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(this.algorithm);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Cached> e : entries) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().lastModified);
+                out.writeUTF(e.getValue().checksum);
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the checksum cache. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+            return false;
+        }
+
+        try {
+            FileUtil.replaceAtomically(temp.toPath(), this.cacheFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the checksum cache. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+            return false;
+        }
+
+        this.changed = false;
+        return true;
+    }
+
+    /**
+     * Method to read the cache file. A cache that cannot be read is dropped, and
+     * every file compared is read again
+     */
+    private void read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checksum cache");
+            }
+
+            // checksums of another algorithm
+            if (!in.readUTF().equals(this.algorithm)) {
+                return;
+            }
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+
+                this.entries.put(key, new Cached(size, lastModified, in.readUTF()));
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the checksum cache, every file compared will be read. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * The checksum of a file, with the size and the modification time it holds for
+     */
+    private static class Cached {
+        private final long size;
+        private final long lastModified;
+        private final String checksum;
+
+        /**
+         * @param size         the size of the file
+         * @param lastModified the modification time of the file in milliseconds
+         * @param checksum     the checksum in hexadecimal
+         */
+        private Cached(long size, long lastModified, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+/**
+ * A first-in first-out queue of the ids of entries of a {@link FileIndex},
+ * kept in a growable int array so that queueing an entry does not box it
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class IdQueue {
+    private int[] ids;
+    private int head;
+    private int tail;
+
+    /**
+     * Default constructor to create an empty queue
+     */
+    public IdQueue() {
+        this.ids = new int[64];
+    }
+
+    /**
+     * Method to add an id at the end of the queue
+     *
+     * @param id the id to be added
+     */
+    public void add(int id) {
+        if (this.tail == this.ids.length) {
+            this.ids = Arrays.copyOf(this.ids, this.ids.length + (this.ids.length >> 1));
+        }
+
+        this.ids[this.tail++] = id;
+    }
+
+    /**
+     * Method to look at the id at the head of the queue
+     *
+     * @return the id at the head of the queue
+     */
+    public int peek() {
+        return this.ids[this.head];
+    }
+
+    /**
+     * Method to remove the id at the head of the queue
+     *
+     * @return the removed id
+     */
+    public int poll() {
+        return this.ids[this.head++];
+    }
+
+    /**
+     * Method to read the id at a position of the queue without removing it
+     *
+     * @param position the position, 0 being the head of the queue
+     * @return the id at that position
+     */
+    public int get(int position) {
+        return this.ids[this.head + position];
+    }
+
+    /**
+     * @return the number of ids in the queue
+     */
+    public int size() {
+        return this.tail - this.head;
+    }
+
+    /**
+     * @return <code>true</code> if the queue has no ids
+     */
+    public boolean isEmpty() {
+        return this.tail == this.head;
+    }
+}
@@ -0,0 +1,502 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A record of everything Tranquil has written to a backup location, kept on
+ * the backup location itself. For every file and directory it holds the path
+ * relative to the backup location, the size and the last modification time, so
+ * that the backup location can be "scanned" by reading this one file instead
+ * of walking the disk.
+ *
+ * The manifest is made of two files in the directory ".tranquil" of the backup
+ * location: a snapshot, rewritten only as a whole and moved into place
+ * atomically, and a log where every item copied since the snapshot is appended
+ * with the group of the backup plan it was copied in (see Checkpoint), after
+ * the copies of the group are synced to the disk with copy.durability=batch. A
+ * record torn by a crash fails its checksum and is ignored, so the manifest
+ * never claims an item that was not copied completely
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class Manifest {
+    /**
+     * The name of the directory at the root of a backup location, where Tranquil
+     * keeps its own files
+     */
+    public static final String DIRECTORY = ".tranquil";
+
+    // the first int of the snapshot, "TQM2"
+    private static final int MAGIC = 0x54514d32;
+
+    // the longest relative path in bytes, longer than any file system allows
+    private static final int MAX_KEY = 1 << 20;
+
+    // the largest record of the log, a path and its metadata
+    private static final int MAX_RECORD = 4 + MAX_KEY + 8 + 8 + 1;
+
+    // the manifests opened so far, by their backup location
+    private static final Map<String, Manifest> opened = new HashMap<>();
+
+    private AppIO appIO;
+
+    // the backup location described by this manifest
+    private String root;
+
+    private File snapshotFile;
+    private File logFile;
+    private FileOutputStream logOut;
+    private DataOutputStream log;
+
+    // the entries recorded and not yet committed, by their relative path
+    private LinkedHashMap<String, Entry> pending;
+
+    // the entries by their relative path
+    private HashMap<String, Entry> entries;
+
+    // the entries by the relative path of their parent, built when first needed
+    private HashMap<String, List<Entry>> children;
+
+    // true if the snapshot was read from the disk
+    private boolean loaded;
+
+    // true while the entries are being filled by a scan of the disk, which reads
+    // it from threads of its own
+    private volatile boolean rebuilding;
+
+    /**
+     * Method to open the manifest of a backup location, reading it from the disk
+     * if it is there. The manifest stays open for {@link #of(String)} until
+     * {@link #close(String)}
+     *
+     * @param root The canonical path of the backup location
+     * @return the manifest of the backup location
+     */
+    public static synchronized Manifest open(String root) {
+        Manifest manifest = opened.get(root);
+
+        if (manifest == null) {
+            manifest = new Manifest(root);
+            opened.put(root, manifest);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Method to find the open manifest of a location
+     *
+     * @param root The canonical path of the location
+     * @return the manifest, or {@code null} if none is open for this location
+     */
+    public static synchronized Manifest of(String root) {
+        return opened.get(root);
+    }
+
+    /**
+     * Method to close the manifest of a backup location, if it is open
+     *
+     * @param root The canonical path of the backup location
+     */
+    public static synchronized void close(String root) {
+        Manifest manifest = opened.remove(root);
+
+        if (manifest != null) {
+            manifest.closeLog();
+        }
+    }
+
+    /**
+     * Constructor to read the manifest of a backup location
+     *
+     * @param root The canonical path of the backup location
+     */
+    private Manifest(String root) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+        this.snapshotFile = new File(new File(root, DIRECTORY), "manifest");
+        this.logFile = new File(new File(root, DIRECTORY), "manifest.log");
+        this.entries = new HashMap<>();
+        this.pending = new LinkedHashMap<>();
+
+        if (this.snapshotFile.isFile()) {
+            this.loaded = this.read();
+        }
+    }
+
+    /**
+     * Method to compute the key of a path, which is its path relative to the root
+     * without a leading separator
+     *
+     * @param root The path of the root directory
+     * @param path The path of a file or directory under the root
+     * @return the relative path, "" for the root itself
+     */
+    public static String relativeKey(String root, String path) {
+        int start = root.length();
+
+        while (start < path.length() && path.charAt(start) == File.separatorChar) {
+            start++;
+        }
+
+        return path.substring(start);
+    }
+
+    /**
+     * @return <code>true</code> if the manifest was read from the backup location
+     */
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * @return <code>true</code> while the manifest is being filled by a scan
+     */
+    public boolean isRebuilding() {
+        return this.rebuilding;
+    }
+
+    /**
+     * Method to forget all the entries, so that a scan of the disk can fill them
+     * again with {@link #add(String, long, long, boolean)}
+     */
+    public synchronized void startRebuild() {
+        this.entries.clear();
+        this.pending.clear();
+        this.children = null;
+        this.rebuilding = true;
+    }
+
+    /**
+     * Method to add an entry found by the scan that rebuilds the manifest
+     *
+     * @param key          the path relative to the backup location
+     * @param size         the size in bytes
+     * @param lastModified the last modification time in milliseconds
+     * @param directory    <code>true</code> for a directory
+     */
+    public synchronized void add(String key, long size, long lastModified, boolean directory) {
+        this.entries.put(key, new Entry(key, size, lastModified, directory));
+    }
+
+    /**
+     * Method to end the rebuild, writing the entries found by the scan as the new
+     * snapshot
+     */
+    public synchronized void finishRebuild() {
+        this.rebuilding = false;
+        this.loaded = this.save();
+    }
+
+    /**
+     * Method to record an item just copied to the backup location. The record
+     * only counts once {@link #commit(Collection, boolean)} takes it, with the
+     * group of the backup plan the item is in, and is dropped if it never does
+     *
+     * @param key          the path relative to the backup location
+     * @param size         the size in bytes
+     * @param lastModified the last modification time in milliseconds
+     * @param directory    <code>true</code> for a directory
+     */
+    public synchronized void record(String key, long size, long lastModified, boolean directory) {
+        this.pending.put(key, new Entry(key, size, lastModified, directory));
+    }
+
+    /**
+     * Method to apply the records of some items, appending them to the log in one
+     * write, once their copies are where they belong
+     *
+     * @param keys  the paths relative to the backup location of the items
+     * @param force <code>true</code> to sync the log to the disk as well
+     */
+    public synchronized void commit(Collection<String> keys, boolean force) {
+        try {
+            boolean appended = false;
+
+            for (String key : keys) {
+                Entry e = this.pending.remove(key);
+
+                if (e != null) {
+                    this.entries.put(key, e);
+                    this.children = null;
+                    this.append(e);
+                    appended = true;
+                }
+            }
+
+            if (!appended) {
+                return;
+            }
+
+            this.log.flush();
+
+            if (force) {
+                this.logOut.getChannel().force(false);
+            }
+        }
+
+        catch (IOException ex) {
+            this.appIO.printf("%n[%s] Could not record the items copied in the manifest of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, ex.getMessage());
+        }
+    }
+
+    /**
+     * Method to append a record to the log, opening it with the first record
+     *
+     * @param e the entry recorded
+     * @throws IOException if the log could not be written
+     */
+    private void append(Entry e) throws IOException {
+        if (this.log == null) {
+            this.logFile.getParentFile().mkdirs();
+            this.logOut = new FileOutputStream(this.logFile, true);
+            this.log = new DataOutputStream(new BufferedOutputStream(this.logOut));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        e.write(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        this.log.writeInt(payload.length);
+        this.log.write(payload);
+        this.log.writeLong(crc.getValue());
+    }
+
+    /**
+     * Method to list the children of a directory of the backup location, as they
+     * were when Tranquil last wrote there
+     *
+     * @param directoryPath The path of a directory of the backup location
+     * @return the children, as files whose metadata comes from the manifest
+     */
+    public synchronized List<File> children(String directoryPath) {
+        if (this.children == null) {
+            this.children = new HashMap<>();
+
+            for (Entry e : this.entries.values()) {
+                int slash = e.key.lastIndexOf(File.separatorChar);
+                String parent = (slash < 0) ? "" : e.key.substring(0, slash);
+                this.children.computeIfAbsent(parent, k -> new ArrayList<>()).add(e);
+            }
+        }
+
+        List<Entry> found = this.children.get(relativeKey(this.root, directoryPath));
+        List<File> files = new ArrayList<>();
+
+        if (found != null) {
+            for (Entry e : found) {
+                String path = new File(directoryPath, e.name()).getPath();
+                files.add(new ScannedFile(path, e.lastModified, e.size, e.directory, path));
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Method to write all the entries as a new snapshot, and start an empty log.
+     * The snapshot is written to a temporary file first and then moved over the
+     * old one, so a crash leaves either the old or the new snapshot in place
+     *
+     * @return <code>true</code> if the snapshot was written
+     */
+    public synchronized boolean save() {
+        File temp = new File(this.snapshotFile.getPath() + ".tmp");
+        temp.getParentFile().mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.entries.size());
+
+            for (Entry e : this.entries.values()) {
+                e.write(out);
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not write the manifest of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        try {
+            FileUtil.replaceAtomically(temp.toPath(), this.snapshotFile.toPath());
+
+            // everything in the log is in the snapshot now
+            this.closeLog();
+            Files.deleteIfExists(this.logFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not write the manifest of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to read the snapshot and then replay the log over it
+     *
+     * @return <code>true</code> if the snapshot was read
+     */
+    private boolean read() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.snapshotFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a manifest");
+            }
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                Entry e = Entry.read(in);
+                this.entries.put(e.key, e);
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the manifest of \"%s\", it will be rebuilt. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            this.entries.clear();
+            return false;
+        }
+
+        if (this.logFile.isFile()) {
+            this.replayLog();
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to apply the records of the log over the entries of the snapshot,
+     * stopping at the first record that is incomplete or fails its checksum
+     */
+    private void replayLog() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.logFile)))) {
+            while (true) {
+                try {
+                    int length = in.readInt();
+
+                    // a length no record can have, the log is damaged from here on
+                    if (length < 0 || length > MAX_RECORD) {
+                        break;
+                    }
+
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    long checksum = in.readLong();
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+
+                    if (crc.getValue() != checksum) {
+                        break;
+                    }
+
+                    Entry e = Entry.read(new DataInputStream(new ByteArrayInputStream(payload)));
+                    this.entries.put(e.key, e);
+                }
+
+                catch (EOFException e) {
+                    // a record torn by a crash ends the log
+                    break;
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the log of the manifest of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to close the log, dropping the records never committed, as their
+     * copies may not be complete
+     */
+    private synchronized void closeLog() {
+        this.pending.clear();
+
+        if (this.log != null) {
+            try {
+                this.log.close();
+            }
+
+            catch (IOException e) {
+                this.appIO.printf("%n%n[%s] Could not close the log of the manifest of \"%s\". %s",
+                        ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            }
+
+            this.log = null;
+            this.logOut = null;
+        }
+    }
+
+    /**
+     * A file or directory recorded in the manifest
+     */
+    private static class Entry {
+        private final String key;
+        private final long size;
+        private final long lastModified;
+        private final boolean directory;
+
+        Entry(String key, long size, long lastModified, boolean directory) {
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+
+        String name() {
+            return this.key.substring(this.key.lastIndexOf(File.separatorChar) + 1);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            byte[] key = this.key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(this.size);
+            out.writeLong(this.lastModified);
+            out.writeBoolean(this.directory);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            int length = in.readInt();
+
+            if (length < 0 || length > MAX_KEY) {
+                throw new IOException("A path of " + length + " bytes");
+            }
+
+            byte[] key = new byte[length];
+            in.readFully(key);
+            return new Entry(new String(key, StandardCharsets.UTF_8), in.readLong(), in.readLong(), in.readBoolean());
+        }
+    }
+}
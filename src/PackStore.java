@@ -0,0 +1,484 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Small files of a backup location packed one after the other into large
+ * segment files, instead of being written as files of their own, so that a
+ * backup of millions of tiny files turns into a few long sequential writes.
+ *
+ * The segments are kept in the directory "packs" in the directory ".tranquil"
+ * of the backup location. Every record of a segment holds the path of a file
+ * relative to the backup location, its last modification time and its bytes,
+ * protected by a checksum. A file packed again, because it changed, gets a new
+ * record, and a file that is no longer packed gets a record without bytes, so
+ * the last record of a path always wins.
+ *
+ * The index of where every file is, segment, offset, length and time, is saved
+ * next to the segments when the packs are closed. Records appended after the
+ * index was saved, e.g. by a backup that was interrupted, are read back from
+ * the segments themselves, up to the first record torn by the interruption
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class PackStore {
+    // the first int of the index, "TQX1"
+    private static final int MAGIC = 0x54515831;
+
+    // the largest file that can be packed
+    public static final int MAX_PACKED = 16 * 1024 * 1024;
+
+    // the largest record, a path of at most 65535 bytes with its time and bytes
+    private static final int MAX_RECORD = 2 + 65535 + 8 + 4 + MAX_PACKED;
+
+    private AppIO appIO;
+
+    // the backup location
+    private String root;
+
+    private File directory;
+    private File indexFile;
+
+    // the size after which a new segment is started
+    private long segmentSize;
+
+    // the packed files by their relative path
+    private Map<String, Entry> entries;
+
+    // the segment being appended to, and its number
+    private FileChannel segment;
+    private int segmentNumber;
+
+    /**
+     * Method to open the packs of a backup location, reading the index and the
+     * records appended after it
+     *
+     * @param root        The canonical path of the backup location
+     * @param segmentSize The size after which a new segment is started
+     * @return the packs of the backup location, empty if it has none yet
+     */
+    public static PackStore open(String root, long segmentSize) {
+        PackStore packs = new PackStore(root, segmentSize);
+        packs.read();
+        return packs;
+    }
+
+    /**
+     * Constructor to locate the packs of a backup location
+     *
+     * @param root        The canonical path of the backup location
+     * @param segmentSize The size after which a new segment is started
+     */
+    private PackStore(String root, long segmentSize) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+        this.directory = new File(new File(root, Manifest.DIRECTORY), "packs");
+        this.indexFile = new File(this.directory, "index");
+        this.segmentSize = Math.max(segmentSize, 1024 * 1024);
+        this.entries = new HashMap<>();
+        this.segmentNumber = 1;
+    }
+
+    /**
+     * @return the number of files packed
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the relative paths of the files packed, sorted
+     */
+    public synchronized List<String> list() {
+        List<String> keys = new ArrayList<>(this.entries.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Method to check if a file is packed already with the given size and time
+     *
+     * @param key          the path relative to the backup location
+     * @param size         the size in bytes
+     * @param lastModified the last modification time in milliseconds
+     * @return <code>true</code> if the same file is packed
+     */
+    public synchronized boolean contains(String key, long size, long lastModified) {
+        Entry e = this.entries.get(key);
+        return e != null && e.length == size && e.lastModified == lastModified;
+    }
+
+    /**
+     * Method to pack a file, after the records of the current segment
+     *
+     * @param key          the path relative to the backup location
+     * @param bytes        the content of the file
+     * @param lastModified the last modification time in milliseconds
+     * @return the segment the file was packed in
+     * @throws IOException if the segment could not be written
+     */
+    public Path add(String key, byte[] bytes, long lastModified) throws IOException {
+        return this.append(key, bytes, lastModified);
+    }
+
+    /**
+     * Method to mark a file as no longer packed, if it is
+     *
+     * @param key the path relative to the backup location
+     * @throws IOException if the segment could not be written
+     */
+    public void remove(String key) throws IOException {
+        synchronized (this) {
+            if (!this.entries.containsKey(key)) {
+                return;
+            }
+        }
+
+        this.append(key, null, 0);
+    }
+
+    /**
+     * Method to write a packed file out as a file of its own, with its time
+     *
+     * @param key    the path relative to the backup location
+     * @param target the path of the file to be written
+     * @throws IOException if the file is not packed, or could not be written
+     */
+    public void restore(String key, Path target) throws IOException {
+        Entry e = this.lookup(key);
+        byte[] bytes = this.read(key, e);
+
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+
+        Files.write(target, bytes);
+        Files.setLastModifiedTime(target, FileTime.fromMillis(e.lastModified));
+    }
+
+    /**
+     * Method to read the bytes of a packed file
+     *
+     * @param key the path relative to the backup location
+     * @return the bytes of the file
+     * @throws IOException if the file is not packed, or could not be read
+     */
+    public byte[] read(String key) throws IOException {
+        return this.read(key, this.lookup(key));
+    }
+
+    /**
+     * @param key the path relative to the backup location
+     * @return where the file is packed
+     * @throws IOException if the file is not packed
+     */
+    private synchronized Entry lookup(String key) throws IOException {
+        Entry e = this.entries.get(key);
+
+        if (e == null) {
+            throw new IOException("\"" + key + "\" is not packed");
+        }
+
+        return e;
+    }
+
+    /**
+     * @param key the path relative to the backup location
+     * @param e   where the file is packed
+     * @return the bytes of the file
+     * @throws IOException if the segment could not be read
+     */
+    private byte[] read(String key, Entry e) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(e.length);
+
+        try (FileChannel in = FileChannel.open(this.segmentFile(e.segment).toPath(), StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (in.read(bytes, e.offset + bytes.position()) < 0) {
+                    throw new EOFException("The pack of \"" + key + "\" is cut short");
+                }
+            }
+        }
+
+        return bytes.array();
+    }
+
+    /**
+     * Method to save the index and close the current segment
+     */
+    public synchronized void close() {
+        try {
+            if (this.segment != null) {
+                this.segment.close();
+                this.segment = null;
+            }
+
+            this.writeIndex();
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the index of the packs of \"%s\", it is rebuilt from the "
+                    + "packs. %s", ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to append a record to the current segment, starting a new segment
+     * when it is full
+     *
+     * @param key          the path relative to the backup location
+     * @param bytes        the content of the file, or {@code null} to remove it
+     * @param lastModified the last modification time in milliseconds
+     * @return the segment the record was appended to
+     */
+    private synchronized Path append(String key, byte[] bytes, long lastModified) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeUTF(key);
+        p.writeLong(lastModified);
+        p.writeInt(bytes == null ? -1 : bytes.length);
+        int dataOffset = payload.size();
+
+        if (bytes != null) {
+            p.write(bytes);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 12);
+        DataOutputStream r = new DataOutputStream(record);
+        r.writeInt(payload.size());
+        payload.writeTo(r);
+        r.writeLong(crc.getValue());
+
+        if (this.segment == null || this.segment.size() >= this.segmentSize) {
+            this.nextSegment();
+        }
+
+        long position = this.segment.size();
+        ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+
+        while (buffer.hasRemaining()) {
+            this.segment.write(buffer, position + buffer.position());
+        }
+
+        if (bytes == null) {
+            this.entries.remove(key);
+        }
+
+        else {
+            this.entries.put(key, new Entry(this.segmentNumber, position + 4 + dataOffset, bytes.length,
+                    lastModified));
+        }
+
+        return this.segmentFile(this.segmentNumber).toPath();
+    }
+
+    /**
+     * Method to open the segment to append to, the last one unless it is full
+     */
+    private void nextSegment() throws IOException {
+        if (this.segment != null) {
+            this.segment.close();
+            this.segmentNumber++;
+        }
+
+        this.directory.mkdirs();
+        this.segment = FileChannel.open(this.segmentFile(this.segmentNumber).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (this.segment.size() >= this.segmentSize) {
+            this.nextSegment();
+        }
+    }
+
+    /**
+     * @param number the number of a segment
+     * @return the file of the segment
+     */
+    private File segmentFile(int number) {
+        return new File(this.directory, String.format("segment-%06d", number));
+    }
+
+    /**
+     * Method to write the index to a temporary file and move it over the old one
+     */
+    private void writeIndex() throws IOException {
+        if (this.entries.isEmpty() && !this.indexFile.isFile()) {
+            return;
+        }
+
+        File temp = new File(this.indexFile.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.segmentNumber);
+            out.writeLong(this.segmentFile(this.segmentNumber).length());
+            out.writeInt(this.entries.size());
+
+            for (Map.Entry<String, Entry> e : this.entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                e.getValue().write(out);
+            }
+        }
+
+        FileUtil.replaceAtomically(temp.toPath(), this.indexFile.toPath());
+    }
+
+    /**
+     * Method to read the index, and then the records appended to the segments
+     * after it was saved
+     */
+    private void read() {
+        int lastSegment = 1;
+        long covered = 0;
+
+        if (this.indexFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(this.indexFile)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an index of packs");
+                }
+
+                lastSegment = in.readInt();
+                covered = in.readLong();
+                int count = in.readInt();
+
+                for (int i = 0; i < count; i++) {
+                    this.entries.put(in.readUTF(), Entry.read(in));
+                }
+            }
+
+            // every segment is read instead
+            catch (IOException e) {
+                this.entries.clear();
+                lastSegment = 1;
+                covered = 0;
+            }
+        }
+
+        for (int number = lastSegment; this.segmentFile(number).isFile(); number++) {
+            this.segmentNumber = number;
+            this.replay(number, number == lastSegment ? covered : 0);
+        }
+    }
+
+    /**
+     * Method to read the records of a segment from a position on. A segment
+     * whose last record was torn is cut before it, so that the next records are
+     * appended after the last whole one
+     *
+     * @param number   the number of the segment
+     * @param position the position of the first record to be read
+     */
+    private void replay(int number, long position) {
+        File file = this.segmentFile(number);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel.position(position))));
+            long end = position;
+
+            while (true) {
+                try {
+                    int length = in.readInt();
+
+                    if (length < 0 || length > MAX_RECORD) {
+                        break;
+                    }
+
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    long checksum = in.readLong();
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+
+                    if (crc.getValue() != checksum) {
+                        break;
+                    }
+
+                    DataInputStream p = new DataInputStream(new ByteArrayInputStream(payload));
+                    String key = p.readUTF();
+                    long lastModified = p.readLong();
+                    int size = p.readInt();
+
+                    if (size < 0) {
+                        this.entries.remove(key);
+                    }
+
+                    else {
+                        this.entries.put(key, new Entry(number, end + 4 + (length - size), size, lastModified));
+                    }
+
+                    end += 4 + length + 8;
+                }
+
+                catch (EOFException e) {
+                    break;
+                }
+            }
+
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the packs of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+        }
+    }
+
+    /**
+     * Where a packed file is
+     */
+    private static class Entry {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long lastModified;
+
+        Entry(int segment, long offset, int length, long lastModified) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(this.segment);
+            out.writeLong(this.offset);
+            out.writeInt(this.length);
+            out.writeLong(this.lastModified);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            return new Entry(in.readInt(), in.readLong(), in.readInt(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.File;
+import java.util.Comparator;
+
+/**
+ * Orders relative paths component by component, i.e. "a/b" comes right after
+ * "a" and before "a-b", because the separator is treated as lower than every
+ * other character.
+ *
+ * This is the order in which a depth-first walk, that enlists the children of
+ * every directory sorted by name, emits its entries. Two such walks can
+ * therefore be merged without sorting their complete lists first
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class PathOrder implements Comparator<String> {
+    private final boolean ignoreCase;
+
+    /**
+     * Constructor to create the order used on this system, case-insensitive for
+     * Windows and macOS, case-sensitive otherwise
+     */
+    public PathOrder() {
+        this(FileDetails.ignoreCase());
+    }
+
+    /**
+     * Constructor to create the order with the given case sensitivity
+     *
+     * @param ignoreCase <code>true</code> if the names differing only in case are
+     *                   the same
+     */
+    public PathOrder(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Method to convert a character to the value it is sorted by
+     *
+     * @param c the character
+     * @return the value to be compared
+     */
+    private char key(char c) {
+        if (c == File.separatorChar) {
+            return 0;
+        }
+
+        if (this.ignoreCase) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        return c;
+    }
+
+    @Override
+    public int compare(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+
+        for (int i = 0; i < n; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+
+            if (x != y) {
+                x = this.key(x);
+                y = this.key(y);
+
+                if (x != y) {
+                    return x - y;
+                }
+            }
+        }
+
+        return a.length() - b.length();
+    }
+}
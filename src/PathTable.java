@@ -0,0 +1,82 @@
+/**
+ * An open addressing hash table from the relative paths of the entries of a
+ * scan to their positions in the list of the scan. The table is built once
+ * and only read afterwards, so it can be probed from many threads at the same
+ * time without locking.
+ *
+ * The slots hold (position + 1), 0 marking an empty slot, and collisions are
+ * resolved by linear probing. The table is kept at most half full
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class PathTable {
+    private final String[] keys;
+    private final int[] slots;
+    private final int mask;
+
+    /**
+     * Constructor to build the table of the given keys. When the same key appears
+     * more than once, the first position is kept
+     *
+     * @param keys The relative path of every entry, by its position
+     */
+    public PathTable(String[] keys) {
+        int capacity = 16;
+
+        while (capacity < 2 * keys.length) {
+            capacity <<= 1;
+        }
+
+        this.keys = keys;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int position = 0; position < keys.length; position++) {
+            int slot = hash(keys[position]) & this.mask;
+
+            while (this.slots[slot] != 0) {
+                if (keys[this.slots[slot] - 1].equals(keys[position])) {
+                    break;
+                }
+
+                slot = (slot + 1) & this.mask;
+            }
+
+            if (this.slots[slot] == 0) {
+                this.slots[slot] = position + 1;
+            }
+        }
+    }
+
+    /**
+     * Method to find the position of a key
+     *
+     * @param key The relative path to be found
+     * @return the position of the entry with that path, or -1 if there is none
+     */
+    public int find(String key) {
+        int slot = hash(key) & this.mask;
+
+        while (this.slots[slot] != 0) {
+            int position = this.slots[slot] - 1;
+
+            if (this.keys[position].equals(key)) {
+                return position;
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Method to spread the hash of a key over the low bits, which pick the slot
+     */
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
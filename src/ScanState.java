@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the last scan of a directory tree found in each directory: the last
+ * modification time of the directory and the names of its children.
+ *
+ * Adding, removing or renaming a child changes the modification time of its
+ * directory, so a directory whose modification time is the same as at the last
+ * scan still has the same children, and they need not be listed again. Only
+ * the children themselves are read again, as a change inside a file does not
+ * touch its directory.
+ *
+ * The state is kept in the directory "scanState" in the working directory, one
+ * file per scanned tree, and is replaced as a whole after every scan
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ScanState {
+    // the first int of the state file, "TQS1"
+    private static final int MAGIC = 0x54515331;
+
+    // an item modified this close to being read may change again within the
+    // same tick of its clock, so its modification time is not trusted
+    static final long RACY_MILLIS = 2000;
+
+    // the recorded time of a directory that must be listed at the next scan
+    private static final long UNTRUSTED = Long.MIN_VALUE;
+
+    // the separator of the names of the children, which no name can contain
+    private static final char SEPARATOR = '\0';
+
+    private AppIO appIO;
+
+    // the scanned tree described by this state
+    private String root;
+
+    private File stateFile;
+
+    // the directories found by the last scan, by their canonical path
+    private Map<String, Directory> previous;
+
+    // the directories found by this scan, by their canonical path
+    private Map<String, Directory> current;
+
+    // number of scans since every directory was last listed
+    private int runs;
+
+    // true if every directory is listed by this scan
+    private boolean fullScan;
+
+    // when this scan started, in milliseconds
+    private long started;
+
+    // number of directories whose recorded children were reused
+    private LongAdder reused;
+
+    /**
+     * Constructor to read the state left by the last scan of a directory tree
+     *
+     * @param root            The canonical path of the scanned tree
+     * @param fullRescanEvery List every directory again at every this many scans,
+     *                        0 to never force it
+     */
+    public ScanState(String root, int fullRescanEvery) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+        this.stateFile = new File("scanState", Integer.toHexString(root.hashCode()));
+        this.previous = new HashMap<>();
+        this.current = new ConcurrentHashMap<>();
+        this.reused = new LongAdder();
+        this.started = System.currentTimeMillis();
+
+        if (this.stateFile.isFile()) {
+            this.read();
+        }
+
+        if (this.previous.isEmpty() || (fullRescanEvery > 0 && this.runs + 1 >= fullRescanEvery)) {
+            this.previous.clear();
+            this.fullScan = true;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if every directory is listed by this scan
+     */
+    public boolean isFullScan() {
+        return this.fullScan;
+    }
+
+    /**
+     * @return the number of directories whose recorded children were reused
+     */
+    public long reused() {
+        return this.reused.sum();
+    }
+
+    /**
+     * Method to find the children of a directory, as recorded by the last scan, if
+     * the directory has not changed since
+     *
+     * @param directoryPath The canonical path of a directory
+     * @param modified      The current modification time of the directory
+     * @return the names of the children, or {@code null} if the directory has to
+     *         be listed
+     */
+    public String[] children(String directoryPath, long modified) {
+        Directory d = this.previous.get(directoryPath);
+
+        if (d == null || d.modified == UNTRUSTED || d.modified != modified) {
+            return null;
+        }
+
+        String[] names = d.names();
+
+        // a record that does not add up is not trusted
+        if (names.length != d.count) {
+            return null;
+        }
+
+        this.reused.increment();
+        return names;
+    }
+
+    /**
+     * Method to record the children of a directory found by this scan
+     *
+     * @param directoryPath The canonical path of a directory
+     * @param modified      The modification time of the directory, read before
+     *                      its children were listed
+     * @param names         The names of all the children, including the ones not
+     *                      eligible for backup
+     */
+    public void record(String directoryPath, long modified, List<String> names) {
+        if (modified / 1000000 > this.started - RACY_MILLIS) {
+            modified = UNTRUSTED;
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(SEPARATOR);
+            }
+
+            sb.append(name);
+        }
+
+        this.current.put(directoryPath, new Directory(modified, names.size(), sb.toString()));
+    }
+
+    /**
+     * Method to write the directories found by this scan as the new state. The
+     * state is written to a temporary file first and then moved over the old one
+     *
+     * @return <code>true</code> if the state was written
+     */
+    public boolean save() {
+        File temp = new File(this.stateFile.getPath() + ".tmp");
+        temp.getParentFile().mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(this.root);
+            out.writeInt(this.fullScan ? 0 : this.runs + 1);
+            out.writeInt(this.current.size());
+
+            for (Map.Entry<String, Directory> e : this.current.entrySet()) {
+                Directory d = e.getValue();
+                byte[] names = d.names.getBytes(StandardCharsets.UTF_8);
+
+                out.writeUTF(e.getKey());
+                out.writeLong(d.modified);
+                out.writeInt(d.count);
+                out.writeInt(names.length);
+                out.write(names);
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the scan state of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        try {
+            FileUtil.replaceAtomically(temp.toPath(), this.stateFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the scan state of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to read the state file. A state that cannot be read is dropped, and
+     * every directory is listed by this scan
+     */
+    private void read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.stateFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a scan state");
+            }
+
+            // another tree whose path has the same hash
+            if (!in.readUTF().equals(this.root)) {
+                return;
+            }
+
+            this.runs = in.readInt();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                int children = in.readInt();
+                byte[] names = new byte[in.readInt()];
+                in.readFully(names);
+
+                this.previous.put(path, new Directory(modified, children, new String(names, StandardCharsets.UTF_8)));
+            }
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not read the scan state of \"%s\", every directory will be listed. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            this.previous.clear();
+        }
+    }
+
+    /**
+     * A directory found by a scan, with the names of its children joined in one
+     * string to keep the state small
+     */
+    private static class Directory {
+        private final long modified;
+        private final int count;
+        private final String names;
+
+        Directory(long modified, int count, String names) {
+            this.modified = modified;
+            this.count = count;
+            this.names = names;
+        }
+
+        String[] names() {
+            if (this.count == 0) {
+                return new String[0];
+            }
+
+            return this.names.split(String.valueOf(SEPARATOR), -1);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A File whose metadata was read once, during the scan, from its
+ * BasicFileAttributes. The metadata methods of File are answered from memory
+ * instead of asking the file system again, so FileDetails, Delta and
+ * FileCopier can use a ScannedFile like any other File without paying another
+ * stat call per question
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class ScannedFile extends File {
+    private static final long serialVersionUID = 1L;
+
+    private final long lastModified;
+    private final long size;
+    private final boolean directory;
+
+    // the canonical path of the file or directory, known from the scan
+    private final String canonicalPath;
+
+    /**
+     * Constructor to initialize the object variables with the attributes read by
+     * the scan
+     *
+     * @param path          The path of the file or directory
+     * @param attributes    The attributes of the file or directory, with symbolic
+     *                      links already followed
+     * @param canonicalPath The canonical path of the file or directory
+     */
+    public ScannedFile(String path, BasicFileAttributes attributes, String canonicalPath) {
+        super(path);
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.size = attributes.size();
+        this.directory = attributes.isDirectory();
+        this.canonicalPath = canonicalPath;
+    }
+
+    /**
+     * Constructor to initialize the object variables with metadata known from
+     * elsewhere, like the manifest of a backup location
+     *
+     * @param path          The path of the file or directory
+     * @param lastModified  The last modification time in milliseconds
+     * @param size          The size in bytes
+     * @param directory     <code>true</code> for a directory
+     * @param canonicalPath The canonical path of the file or directory
+     */
+    public ScannedFile(String path, long lastModified, long size, boolean directory, String canonicalPath) {
+        super(path);
+        this.lastModified = lastModified;
+        this.size = size;
+        this.directory = directory;
+        this.canonicalPath = canonicalPath;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return this.directory;
+    }
+
+    @Override
+    public boolean isFile() {
+        return !this.directory;
+    }
+
+    @Override
+    public long lastModified() {
+        return this.lastModified;
+    }
+
+    @Override
+    public long length() {
+        return this.size;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return this.canonicalPath;
+    }
+}
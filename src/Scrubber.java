@@ -0,0 +1,470 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads every file of a backup location, to find the ones that cannot be read
+ * any more, or whose checksum is not the one computed when they were copied
+ * (see copy.hash), long before they are needed for a restore.
+ *
+ * The files are read by scrub.threads threads at a time, in large sequential
+ * reads, and the bytes read count against the throttle of the backups. The
+ * files are scrubbed in the order of their paths, and the path up to which
+ * every file was scrubbed is saved now and then, so a scrub that was stopped
+ * carries on from there the next time.
+ *
+ * Every damaged, missing or unreadable file is written to the report
+ * "scrub-report" in the directory ".tranquil" of the backup location. A file
+ * changed after its checksum was computed is only read, as its checksum says
+ * nothing about it any more
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class Scrubber {
+    // the bytes read from a file at a time
+    private static final int READ_SIZE = 4 * 1024 * 1024;
+
+    // how often the progress is saved
+    private static final long SAVE_MILLIS = 5000;
+
+    private AppIO appIO;
+
+    // the backup location
+    private String root;
+
+    private File progressFile;
+    private File reportFile;
+
+    private ChecksumCatalog catalog;
+    private PackStore packs;
+    private Throttle throttle;
+
+    // the relative paths of the files to be scrubbed, sorted, those scrubbed, and
+    // where the scrub starts
+    private List<String> keys;
+    private BitSet done;
+    private int start;
+
+    private Writer report;
+    private long saved;
+
+    // the buffer of every thread
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(READ_SIZE));
+
+    private AtomicLong scrubbed;
+    private AtomicLong bytes;
+    private AtomicLong unchecked;
+    private AtomicLong changed;
+    private AtomicLong damaged;
+
+    // the unfinished copies of interrupted backups found, and their bytes
+    private AtomicLong parts;
+    private AtomicLong partBytes;
+
+    /**
+     * Constructor to locate the catalog, the packs and the progress of a backup
+     * location
+     *
+     * @param root The canonical path of the backup location
+     */
+    public Scrubber(String root) {
+        this.appIO = AppIO.getInstance();
+        this.root = root;
+
+        File directory = new File(root, Manifest.DIRECTORY);
+        this.progressFile = new File(directory, "scrub");
+        this.reportFile = new File(directory, "scrub-report");
+
+        this.throttle = Throttle.getInstance();
+        this.scrubbed = new AtomicLong();
+        this.bytes = new AtomicLong();
+        this.unchecked = new AtomicLong();
+        this.changed = new AtomicLong();
+        this.damaged = new AtomicLong();
+        this.parts = new AtomicLong();
+        this.partBytes = new AtomicLong();
+    }
+
+    /**
+     * Method to scrub the backup location, carrying on from where the last scrub
+     * stopped, if it did
+     *
+     * @return <code>true</code> if no file is damaged, missing or unreadable
+     */
+    public boolean scrub() {
+        this.catalog = ChecksumCatalog.open(this.root);
+        this.packs = PackStore.open(this.root, Settings.getInstance().getLong("copy.packSegmentSize"));
+
+        try {
+            this.keys = this.list();
+            this.start = this.resumePoint();
+            this.done = new BitSet(this.keys.size());
+            this.report = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(this.reportFile, this.start > 0), StandardCharsets.UTF_8));
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] Could not start the scrub of \"%s\". %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.root, e.getMessage());
+            return false;
+        }
+
+        if (this.start > 0) {
+            this.appIO.printf("%n%n[%s] Carrying on with the scrub of \"%s\" from \"%s\"",
+                    ColorText.text("INFO", Color.BRIGHT_BLUE), this.root, this.keys.get(this.start));
+        }
+
+        this.appIO.printf("%n%n[%s] Scrubbing %d files, %d with a checksum...%n",
+                ColorText.text("INFO", Color.BRIGHT_BLUE), this.keys.size() - this.start, this.catalog.size());
+
+        int threads = Settings.getInstance().getThreads("scrub.threads");
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger(this.start);
+        this.saved = System.currentTimeMillis();
+
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                for (int i = next.getAndIncrement(); i < this.keys.size(); i = next.getAndIncrement()) {
+                    this.scrub(this.keys.get(i));
+                    this.scrubbed(i);
+                }
+            });
+        }
+
+        workers.shutdown();
+
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.finish();
+        return this.damaged.get() == 0;
+    }
+
+    /**
+     * Method to list the files with a checksum, and every other file of the
+     * backup location, except Tranquil's own
+     *
+     * @return the relative paths of the files, sorted
+     * @throws IOException if the backup location could not be walked
+     */
+    private List<String> list() throws IOException {
+        TreeSet<String> keys = new TreeSet<>(this.catalog.list());
+        Path top = Paths.get(this.root);
+
+        Files.walkFileTree(top, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName() != null && dir.getFileName().toString().equals(Manifest.DIRECTORY)
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // most likely a copy that was being written when a backup stopped
+                if (FileTransfer.isPart(file.getFileName().toString())) {
+                    Scrubber.this.parts.incrementAndGet();
+                    Scrubber.this.partBytes.addAndGet(attrs.size());
+                }
+
+                keys.add(Manifest.relativeKey(Scrubber.this.root, file.toString()));
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            // a directory that cannot be listed is reported by the files in it that
+            // have a checksum
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * @return the number of the file the last scrub stopped at, or 0 to start
+     *         over
+     */
+    private int resumePoint() {
+        if (!this.progressFile.isFile() || !this.reportFile.isFile()) {
+            return 0;
+        }
+
+        try {
+            String key = new String(Files.readAllBytes(this.progressFile.toPath()), StandardCharsets.UTF_8);
+            int i = Collections.binarySearch(this.keys, key);
+            i = i >= 0 ? i : -i - 1;
+
+            // the files found by the last scrub before that file are kept in the
+            // report, the files after it are scrubbed again
+            if (i < this.keys.size()) {
+                List<String> found = new ArrayList<>();
+
+                for (String line : Files.readAllLines(this.reportFile.toPath(), StandardCharsets.UTF_8)) {
+                    String[] fields = line.split("\t", 3);
+
+                    if (fields.length == 3 && fields[1].compareTo(key) < 0) {
+                        found.add(line);
+                    }
+                }
+
+                Files.write(this.reportFile.toPath(), found, StandardCharsets.UTF_8);
+                this.damaged.set(found.size());
+                return i;
+            }
+
+            return 0;
+        }
+
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Method to read a file, and compare its checksum with the catalog if it has
+     * one and was not changed since
+     *
+     * @param key the relative path of the file
+     */
+    private void scrub(String key) {
+        ChecksumCatalog.Entry entry = this.catalog.get(key);
+        Path path = Paths.get(this.root, key);
+        BasicFileAttributes attributes;
+
+        this.throttle.acquireFiles(1);
+        this.scrubbed.incrementAndGet();
+
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        catch (NoSuchFileException e) {
+            if (entry != null && this.packs.contains(key, entry.getSize(), entry.getLastModified())) {
+                this.scrubPacked(key, entry);
+            }
+
+            else if (entry != null) {
+                this.found("MISSING", key, "has a checksum, but is not at the backup location");
+            }
+
+            return;
+        }
+
+        catch (IOException e) {
+            this.found("UNREADABLE", key, e.getMessage());
+            return;
+        }
+
+        ContentHash hash = null;
+
+        if (entry == null) {
+            this.unchecked.incrementAndGet();
+        }
+
+        else if (attributes.size() != entry.getSize()
+                || attributes.lastModifiedTime().toMillis() != entry.getLastModified()) {
+            this.changed.incrementAndGet();
+        }
+
+        else {
+            hash = ContentHash.of(entry.getAlgorithm());
+        }
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = this.buffers.get();
+
+            while (true) {
+                buffer.clear();
+
+                if (in.read(buffer) < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                this.throttle.acquireBytes(buffer.remaining());
+                this.bytes.addAndGet(buffer.remaining());
+
+                if (hash != null) {
+                    hash.update(buffer);
+                }
+            }
+        }
+
+        catch (IOException e) {
+            this.found("UNREADABLE", key, e.getMessage());
+            return;
+        }
+
+        if (hash != null && !hash.hex().equals(entry.getChecksum())) {
+            this.found("DAMAGED", key, "does not match its checksum");
+        }
+    }
+
+    /**
+     * Method to read a packed file, and compare its checksum with the catalog
+     *
+     * @param key   the relative path of the file
+     * @param entry the checksum of the file
+     */
+    private void scrubPacked(String key, ChecksumCatalog.Entry entry) {
+        try {
+            byte[] bytes = this.packs.read(key);
+            this.throttle.acquireBytes(bytes.length);
+            this.bytes.addAndGet(bytes.length);
+
+            ContentHash hash = ContentHash.of(entry.getAlgorithm());
+            hash.update(bytes);
+
+            if (!hash.hex().equals(entry.getChecksum())) {
+                this.found("DAMAGED", key, "is packed, and does not match its checksum");
+            }
+        }
+
+        catch (IOException e) {
+            this.found("UNREADABLE", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to report a file
+     *
+     * @param kind    DAMAGED, MISSING or UNREADABLE
+     * @param key     the relative path of the file
+     * @param problem what is wrong with it
+     */
+    private synchronized void found(String kind, String key, String problem) {
+        this.damaged.incrementAndGet();
+        this.appIO.printf("%n[%s] %s \"%s\" %s", ColorText.text("FAIL", Color.BRIGHT_RED), kind, key, problem);
+
+        try {
+            this.report.write(String.format("%s\t%s\t%s%n", kind, key, problem));
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the report of the scrub. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+        }
+    }
+
+    /**
+     * Method to mark a file as scrubbed, and save the progress now and then
+     *
+     * @param i the number of the file
+     */
+    private synchronized void scrubbed(int i) {
+        this.done.set(i);
+
+        if (System.currentTimeMillis() - this.saved < SAVE_MILLIS) {
+            return;
+        }
+
+        this.saved = System.currentTimeMillis();
+        int first = this.done.nextClearBit(this.start);
+
+        if (first >= this.keys.size()) {
+            return;
+        }
+
+        // the report first, so it has every file before the one saved
+        try {
+            this.report.flush();
+
+            File temp = new File(this.progressFile.getPath() + ".tmp");
+            Files.write(temp.toPath(), this.keys.get(first).getBytes(StandardCharsets.UTF_8));
+
+            FileUtil.replaceAtomically(temp.toPath(), this.progressFile.toPath());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not save the progress of the scrub. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+        }
+    }
+
+    /**
+     * Method to end the scrub, removing the progress if every file was scrubbed,
+     * and print what was found
+     */
+    private void finish() {
+        try {
+            this.report.close();
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n[%s] Could not write the report of the scrub. %s",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+        }
+
+        if (this.done.nextClearBit(this.start) >= this.keys.size()) {
+            this.progressFile.delete();
+        }
+
+        this.appIO.printf("%n%n[%s] %d files scrubbed, %s read", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                this.scrubbed.get(), FileDetails.humanReadableSize(this.bytes.get()));
+
+        if (this.unchecked.get() > 0 || this.changed.get() > 0) {
+            this.appIO.printf("%n[%s] %d files were only read, %d without a checksum and %d changed since it "
+                    + "was computed", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                    this.unchecked.get() + this.changed.get(), this.unchecked.get(), this.changed.get());
+        }
+
+        if (this.parts.get() > 0) {
+            this.appIO.printf("%n[%s] %d files named \"%s*\" take %s, most likely copies left by an interrupted "
+                    + "backup. Resuming it ([5] in the menu), or the next backup to this location, removes them",
+                    ColorText.text("NOTE", Color.BRIGHT_MAGENTA), this.parts.get(), FileTransfer.PART_PREFIX,
+                    FileDetails.humanReadableSize(this.partBytes.get()));
+        }
+
+        if (this.damaged.get() > 0) {
+            this.appIO.printf("%n%n[%s] %d files are damaged, missing or unreadable, listed in \"%s\"",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.damaged.get(), this.reportFile.getPath());
+        }
+
+        else {
+            this.appIO.printf("%n%n[%s] No file is damaged, missing or unreadable",
+                    ColorText.text("DONE", Color.BRIGHT_GREEN));
+        }
+    }
+}
@@ -0,0 +1,532 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Holds the tunable settings of Tranquil, like the parallelism of the scan.
+ * Settings are kept in memory as key-value pairs and persisted in the file
+ * "settings" in the working directory, next to the skipList.
+ *
+ * Every setting has a default value, which is used when the settings file does
+ * not exist, or does not mention the setting
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class Settings {
+    private AppIO appIO;
+    private File settingsFile;
+    private Properties settings;
+
+    // the modification time of the settings file when it was last read
+    private long settingsRead;
+
+    /**
+     * All the known settings as {key, default value, description}
+     */
+    private static final String[][] ENTRIES = {
+            { "scan.parallelism", "0",
+                    "Threads used to scan a directory tree. 0 = one per processor, 1 = single-threaded walk" },
+            { "scan.mode", "nio",
+                    "How entries are read. nio = one attributes call per entry, file = java.io.File calls" },
+            { "delta.engine", "merge",
+                    "How changes are found. merge = sort both scans then compare, stream = compare while scanning, "
+                            + "index = compare compact in-memory indexes, hash = look up every source entry in a "
+                            + "hash table of the destination" },
+            { "delta.parallelism", "0",
+                    "Threads looking up the source entries with delta.engine=hash. 0 = one per processor" },
+            { "delta.contentCompare", "false",
+                    "Compare the content of a file whose size is the same as its copy but whose modification "
+                            + "time is not, and leave it out of the backup if the content is the same" },
+            { "delta.compareThreads", "4",
+                    "With delta.contentCompare=true, threads reading the files compared. 0 = one per processor" },
+            { "delta.hashCacheSize", "100000",
+                    "With delta.contentCompare=true, the most checksums of files remembered between backups" },
+            { "manifest.enabled", "true",
+                    "Keep a manifest of what is written on the backup location, and read it instead of scanning" },
+            { "manifest.verify", "false",
+                    "Scan the backup location anyway, and rebuild its manifest from what is really there" },
+            { "scan.prune", "true",
+                    "Do not list again the directories whose modification time is unchanged since the last scan" },
+            { "scan.fullRescanEvery", "0",
+                    "With scan.prune, list every directory again at every Nth scan. 0 = never" },
+            { "canonical.cacheSize", "65536",
+                    "Number of directories whose canonical path is remembered, to resolve their children faster" },
+            { "copy.readers", "4",
+                    "Files being read from the source at the same time, counted block by block. 0 = one per "
+                            + "processor, 1 with copy.writers=1 copies one item at a time" },
+            { "copy.writers", "4",
+                    "Files being written to the backup location at the same time, counted block by block. 0 = one "
+                            + "per processor" },
+            { "journal.enabled", "true",
+                    "Back up only the paths recorded by a watcher of the source ([4] in the menu), when it has "
+                            + "seen every change since the last backup" },
+            { "threads.mode", "platform",
+                    "How directories are scanned and files copied. platform = pools of threads sized by "
+                            + "scan.parallelism and copy.smallThreads/mediumThreads/hugeThreads, virtual = one "
+                            + "virtual thread for every directory and every file (Java 21+, as platform on older "
+                            + "Java)" },
+            { "threads.virtualLimit", "256",
+                    "Directories listed, and files copied, at the same time with threads.mode=virtual" },
+            { "copy.method", "channel",
+                    "How files are copied. channel = FileChannel.transferTo, letting the kernel move the bytes, "
+                            + "files = Files.copy, or transferTo a chunk at a time while the bytes are throttled, "
+                            + "pipeline = one thread reads while another writes, for a source and a backup location "
+                            + "on different drives. Files copied sparsely, see copy.sparseMinSize, are read through "
+                            + "the heap whatever the method" },
+            { "copy.pipelineBufferSize", "1048576",
+                    "With copy.method=pipeline, the bytes read into a buffer at a time" },
+            { "copy.pipelineDepth", "4",
+                    "With copy.method=pipeline, the buffers read ahead of the writes" },
+            { "copy.chunkSize", "8388608",
+                    "Bytes moved by each transferTo call with copy.method=channel" },
+            { "copy.reflink", "false",
+                    "With copy.method=channel, clone files of 1 MB or more where the backup location supports it "
+                            + "(Linux, e.g. Btrfs or XFS), so the copy shares the blocks of the original" },
+            { "copy.patchMinSize", "67108864",
+                    "Files of at least this many bytes already at the backup location are compared block by block, "
+                            + "and only the blocks that changed are written. 0 = always copy the whole file" },
+            { "copy.patchBlockSize", "1048576",
+                    "Bytes compared at a time when a file is updated in place" },
+            { "copy.sparseMinSize", "0",
+                    "Files of at least this many bytes are copied sparsely, the blocks of zeros left as holes that "
+                            + "take no space at the backup location, for sources known to be sparse like disk images. "
+                            + "Each block is read and checked for zeros instead of going through copy.method. "
+                            + "0 = never" },
+            { "copy.appendCheck", "full",
+                    "When a file only grew, like a log, write just the new end after checking that the copy is "
+                            + "still its beginning. full = compare every byte, off = copy the whole file, sample = "
+                            + "compare 18 blocks, only for files that are never changed but at their end: a file that "
+                            + "grew and changed elsewhere, like a database or an archive, keeps a corrupt copy" },
+            { "copy.durability", "none",
+                    "none = leave writing the copies to the disk to the system, batch = sync every new copy to the "
+                            + "disk before it replaces the old one, and the copies and their directories a group at a "
+                            + "time before counting them as done, so none is lost if the power fails" },
+            { "copy.syncItems", "1000",
+                    "With copy.durability=batch, the most copies synced in one group" },
+            { "copy.syncBytes", "268435456",
+                    "With copy.durability=batch, the most bytes copied before a group is synced" },
+            { "copy.syncMillis", "2000",
+                    "With copy.durability=batch, the longest a copy waits before its group is synced" },
+            { "copy.pack", "false",
+                    "Pack small files into large segment files at the backup location, written one after the "
+                            + "other instead of as files of their own. Needs manifest.enabled=true" },
+            { "copy.packMaxSize", "4096",
+                    "With copy.pack=true, the largest file packed, at most 16777216" },
+            { "copy.packSegmentSize", "268435456",
+                    "With copy.pack=true, the size after which a new segment file is started" },
+            { "copy.hash", "off",
+                    "Checksum computed from the bytes of every file as it is copied, and kept at the backup "
+                            + "location. off, crc32c = fast, or a digest like SHA-256" },
+            { "copy.verify", "false",
+                    "With copy.hash, read every copy back and compare its checksum before it replaces the old copy. "
+                            + "Files are then never patched in place, see copy.patchMinSize" },
+            { "copy.order", "path",
+                    "The order files are copied in. path = the order of the scan, newest = the most recently "
+                            + "modified first, locality = directory by directory, in the order of their inodes, for "
+                            + "spinning disks" },
+            { "copy.smallMaxSize", "1048576",
+                    "Files of at most this many bytes are copied by the workers of the small files" },
+            { "copy.hugeMinSize", "1073741824",
+                    "Files of at least this many bytes are copied by the workers of the huge files" },
+            { "copy.smallThreads", "4",
+                    "Workers copying the small files. 0 = one per processor. A worker without files of its own "
+                            + "copies smaller ones" },
+            { "copy.mediumThreads", "2",
+                    "Workers copying the files neither small nor huge. 0 = one per processor" },
+            { "copy.hugeThreads", "1",
+                    "Workers copying the huge files. 0 = one per processor" },
+            { "scrub.threads", "4",
+                    "Files read at the same time by a scrub of a backup location ([7] in the menu). 0 = one per "
+                            + "processor" },
+            { "throttle.bytesPerSecond", "0",
+                    "The most bytes the copies read or write a second, 0 = no limit. A running backup picks up a "
+                            + "change of the throttle settings within a second" },
+            { "throttle.filesPerSecond", "0",
+                    "The most files scanned or copied a second, 0 = no limit" },
+            { "throttle.schedule", "",
+                    "Other limits for some hours of the day, as HH:MM-HH:MM=bytes/files separated by commas, "
+                            + "e.g. 08:00-20:00=10485760/200" },
+    };
+
+    /**
+     * The instance variable containing the one and only object of Settings
+     */
+    private static Settings instanceVar = null;
+
+    /**
+     * Settings follows Singleton design pattern
+     *
+     * @return the instance of this Settings
+     */
+    public static synchronized Settings getInstance() {
+        if (instanceVar == null)
+            instanceVar = new Settings();
+
+        return instanceVar;
+    }
+
+    /**
+     * Private constructor to restrict instantiating by foreign functions
+     */
+    private Settings() {
+        this.appIO = AppIO.getInstance();
+
+        // set the location of the settingsFile
+        String defaultPath = "settings";
+        this.settingsFile = new File(defaultPath);
+
+        this.settings = new Properties();
+        this.loadDefaults();
+
+        // if the settingsFile can be read, read it to override the defaults
+        if (this.settingsFile.isFile() && this.settingsFile.canRead()) {
+            this.read();
+        }
+
+        // if for permissions the settingsFile cannot be read
+        else if ((this.settingsFile.isFile() == true) && (this.settingsFile.canRead() == false)) {
+            this.appIO.printf("%n%n[%s] \"%s\" file cannot be read, using default settings",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), this.settingsFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Fill the in-memory settings with the default value of every known setting
+     */
+    private void loadDefaults() {
+        for (String[] entry : ENTRIES) {
+            this.settings.setProperty(entry[0], entry[1]);
+        }
+    }
+
+    /**
+     * Find the default value of a known setting
+     *
+     * @param key the name of the setting
+     * @return the default value, or {@code null} if the setting is unknown
+     */
+    private static String defaultOf(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        key = key.trim();
+
+        for (String[] entry : ENTRIES) {
+            if (entry[0].equals(key)) {
+                return entry[1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads all the settings from the file on the disk to the memory
+     */
+    private synchronized boolean read() {
+        boolean flag = false;
+
+        this.settingsRead = this.settingsFile.lastModified();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(this.settingsFile))) {
+            this.settings.clear();
+            this.loadDefaults();
+            this.settings.load(in);
+            flag = true;
+        }
+
+        catch (FileNotFoundException e) {
+            this.appIO.printf("%n%n[%s] FileNotFoundException reported. %s.", ColorText.text("FAIL", Color.BRIGHT_RED),
+                    e.getMessage());
+        }
+
+        catch (IOException | IllegalArgumentException e) {
+            this.appIO.printf("%n%n[%s] Exception reported while reading settings. %s.",
+                    ColorText.text("FAIL", Color.BRIGHT_RED), e.getMessage());
+        }
+
+        return flag;
+    }
+
+    /**
+     * Reads the settings from the file on the disk again, if it was changed since
+     * it was last read, e.g. by hand while a backup runs
+     */
+    public synchronized void reload() {
+        if (this.settingsFile.isFile() && this.settingsFile.canRead()
+                && this.settingsFile.lastModified() != this.settingsRead) {
+            this.read();
+        }
+    }
+
+    /**
+     * Writes all the settings from the memory to the file on the disk
+     */
+    private synchronized boolean write() {
+        boolean flag = false;
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(this.settingsFile))) {
+            this.settings.store(out, "Tranquil Backup settings");
+            flag = true;
+        }
+
+        catch (FileNotFoundException e) {
+            this.appIO.printf("%n%n[%s] FileNotFoundException reported. %s.", ColorText.text("FAIL", Color.BRIGHT_RED),
+                    e.getMessage());
+        }
+
+        catch (IOException e) {
+            this.appIO.printf("%n%n[%s] IOException reported. %s.", ColorText.text("FAIL", Color.BRIGHT_RED),
+                    e.getMessage());
+        }
+
+        this.settingsRead = this.settingsFile.lastModified();
+        return flag;
+    }
+
+    /**
+     * Get the value of a setting as a String
+     *
+     * @param key the name of the setting
+     * @return the value of the setting, or its default value if it is not set
+     */
+    public synchronized String get(String key) {
+        String value = this.settings.getProperty(key);
+
+        if (value == null) {
+            value = defaultOf(key);
+        }
+
+        return (value == null) ? null : value.trim();
+    }
+
+    /**
+     * Get the value of a setting as an int. Falls back to the default value if the
+     * stored value is not a valid integer
+     *
+     * @param key the name of the setting
+     * @return the value of the setting
+     */
+    public int getInt(String key) {
+        try {
+            return Integer.parseInt(this.get(key));
+        }
+
+        catch (NumberFormatException e) {
+            return Integer.parseInt(defaultOf(key));
+        }
+    }
+
+    /**
+     * Get the value of a setting as a long. Falls back to the default value if the
+     * stored value is not a valid integer
+     *
+     * @param key the name of the setting
+     * @return the value of the setting
+     */
+    public long getLong(String key) {
+        try {
+            return Long.parseLong(this.get(key));
+        }
+
+        catch (NumberFormatException e) {
+            return Long.parseLong(defaultOf(key));
+        }
+    }
+
+    /**
+     * Get the value of a setting as a boolean
+     *
+     * @param key the name of the setting
+     * @return {@code true} if the setting is "true" ignoring case, {@code false}
+     *         otherwise
+     */
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(this.get(key));
+    }
+
+    /**
+     * Get the number of threads to be used for a setting where 0 means one thread
+     * per available processor
+     *
+     * @param key the name of the setting
+     * @return the number of threads, at least 1
+     */
+    public int getThreads(String key) {
+        int threads = this.getInt(key);
+
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        return threads;
+    }
+
+    /**
+     * Change the value of a known setting in the memory and then in the file
+     *
+     * @param key   the name of the setting
+     * @param value the new value of the setting
+     * @return {@code true} if the setting is changed successfully, {@code false}
+     *         otherwise
+     */
+    private boolean set(String key, String value) {
+        if ((value == null) || (defaultOf(key) == null)) {
+            return false;
+        }
+
+        synchronized (this) {
+            this.settings.setProperty(key.trim(), value.trim());
+        }
+
+        return this.write();
+    }
+
+    /**
+     * Prints all the settings with their current values and descriptions
+     */
+    private void print() {
+        for (String[] entry : ENTRIES) {
+            this.appIO.printf("%n- %s = %s", entry[0], this.get(entry[0]));
+            this.appIO.printf("%n    %s (default %s)", entry[2], entry[1]);
+        }
+    }
+
+    /**
+     * Settings' own menu to view and change the settings
+     */
+    public void configMenu() {
+        // priming input ch
+        int choice = 9;
+
+        while (choice != 0) {
+            this.appIO.clearConsole();
+
+            this.appIO.printf("%n%nMenu for configuration of settings");
+            this.appIO.printf("%n----------------------------------");
+            this.appIO.printf("%n%n[1] Print the settings");
+            this.appIO.printf("%n%n[2] Change a setting");
+            this.appIO.printf("%n%n[3] Restore a setting to its default value");
+            this.appIO.printf("%n%n[4] Reload the settings");
+            this.appIO.printf("%n%n[5] Save the settings");
+            this.appIO.printf("%n%n[0] Return to the previous the menu");
+
+            try {
+                this.appIO.printf("%n%n%n[%s] Please enter your choice: ", ColorText.text("QUES", Color.BRIGHT_YELLOW));
+                choice = Integer.parseInt(this.appIO.readLine());
+
+                switch (choice) {
+                    // print
+                    case 1: {
+                        this.appIO.printf("%n%nCurrent settings -");
+                        this.print();
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // change
+                    case 2: {
+                        String key = this.appIO.readLine("%n%n[%s] Enter the name of the setting: ",
+                                ColorText.text("QUES", Color.BRIGHT_YELLOW));
+                        String value = this.appIO.readLine("%n[%s] Enter the new value of \"%s\": ",
+                                ColorText.text("QUES", Color.BRIGHT_YELLOW), key);
+
+                        if (this.set(key, value)) {
+                            this.appIO.printf("%n%n[%s] \"%s\" changed successfully",
+                                    ColorText.text("DONE", Color.BRIGHT_GREEN), key);
+                        }
+
+                        else {
+                            this.appIO.printf("%n%n[%s] Unable to change \"%s\". Please check the name of the setting.",
+                                    ColorText.text("FAIL", Color.BRIGHT_RED), key);
+                        }
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // restore default
+                    case 3: {
+                        String key = this.appIO.readLine("%n%n[%s] Enter the name of the setting: ",
+                                ColorText.text("QUES", Color.BRIGHT_YELLOW));
+
+                        if ((defaultOf(key) != null) && this.set(key, defaultOf(key))) {
+                            this.appIO.printf("%n%n[%s] \"%s\" restored to \"%s\"",
+                                    ColorText.text("DONE", Color.BRIGHT_GREEN), key, defaultOf(key));
+                        }
+
+                        else {
+                            this.appIO.printf("%n%n[%s] Unable to restore \"%s\". Please check the name of the setting.",
+                                    ColorText.text("FAIL", Color.BRIGHT_RED), key);
+                        }
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // reload
+                    case 4: {
+                        this.appIO.printf("%n%n[%s] Reloading the settings", ColorText.text("INFO", Color.BRIGHT_BLUE));
+
+                        if (this.read())
+                            this.appIO.printf("%n%n[%s] Settings reloaded", ColorText.text("DONE", Color.BRIGHT_GREEN));
+
+                        else
+                            this.appIO.printf("%n%n[%s] Unable to read the settings. Please try again later.",
+                                    ColorText.text("FAIL", Color.BRIGHT_RED));
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // save
+                    case 5: {
+                        this.appIO.printf("%n%n[%s] Saving the settings", ColorText.text("INFO", Color.BRIGHT_BLUE));
+
+                        if (this.write())
+                            this.appIO.printf("%n%n[%s] Settings saved", ColorText.text("DONE", Color.BRIGHT_GREEN));
+
+                        else
+                            this.appIO.printf("%n%n[%s] Unable to save the settings. Please try again later.",
+                                    ColorText.text("FAIL", Color.BRIGHT_RED));
+
+                        this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+                    }
+                        break;
+
+                    // exit by changing choice
+                    case 0: {
+                        choice = 0;
+                    }
+                        break;
+
+                    default: {
+                        throw new NumberFormatException();
+                    }
+                }
+            }
+
+            catch (NumberFormatException e) {
+                this.appIO.printf("%n%n[%s] Please enter a valid choice", ColorText.text("FAIL", Color.BRIGHT_RED));
+                this.appIO.readLine("%n%n%nPress enter to return to the menu ");
+            }
+
+            catch (java.util.NoSuchElementException e) {
+                this.appIO.printf("%n%n[%s] Input stream has been closed. Bye.",
+                        ColorText.text("FAIL", Color.BRIGHT_RED));
+                Runtime.getRuntime().exit(0);
+            }
+        }
+    }
+}
@@ -38,7 +38,7 @@ public class Skipper {
      *
      * @return the instance of this Skipper
      */
-    public static Skipper getInstance() {
+    public static synchronized Skipper getInstance() {
         if (instanceVar == null)
             instanceVar = new Skipper();
 
@@ -228,10 +228,15 @@ public class Skipper {
      * Check if a directory is to be excluded from the backup process
      */
     public boolean isExcluded(String str) {
+        // nothing to resolve if nothing is excluded
+        if (this.skipList.isEmpty()) {
+            return false;
+        }
+
         File test = new File(str);
 
         try {
-            if (this.skipList.contains(test.getCanonicalPath()))
+            if (this.skipList.contains(CanonicalCache.getInstance().resolve(test)))
                 return true;
 
             else
@@ -0,0 +1,318 @@
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the bytes and the files the scans and the copies go through every
+ * second, so that a backup of a host serving traffic leaves it enough of the
+ * disk. Both limits are token buckets, filled at the rate of the limit and
+ * holding at most a second of it, shared by every thread of the backup.
+ *
+ * The limits are throttle.bytesPerSecond and throttle.filesPerSecond, 0 for
+ * none. throttle.schedule can set other limits for some hours of the day, e.g.
+ * "08:00-20:00=10485760/200" for 10 MB and 200 files a second during the day.
+ * The settings file is read again every second while a backup runs, so the
+ * limits can be changed without stopping it
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class Throttle {
+    // how often the limits are looked up again
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // the longest wait before the limits are looked up again, in case they changed
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private AppIO appIO;
+
+    private final Bucket bytes;
+    private final Bucket files;
+
+    // when the limits were last looked up
+    private long refreshed;
+
+    // the schedule last read, and the windows of it that could be understood
+    private String schedule;
+    private List<Window> windows;
+
+    /**
+     * The instance variable containing the one and only object of Throttle
+     */
+    private static Throttle instanceVar = null;
+
+    /**
+     * Throttle follows Singleton design pattern
+     *
+     * @return the instance of this Throttle
+     */
+    public static synchronized Throttle getInstance() {
+        if (instanceVar == null)
+            instanceVar = new Throttle();
+
+        return instanceVar;
+    }
+
+    /**
+     * Private constructor to restrict instantiating by foreign functions
+     */
+    private Throttle() {
+        this.appIO = AppIO.getInstance();
+        this.bytes = new Bucket();
+        this.files = new Bucket();
+        this.schedule = "";
+        this.windows = new ArrayList<>();
+        this.refreshed = System.nanoTime() - REFRESH_NANOS;
+        this.refresh();
+    }
+
+    /**
+     * Method to wait until some bytes may be read or written
+     *
+     * @param n the number of bytes
+     */
+    public void acquireBytes(long n) {
+        this.acquire(this.bytes, n);
+    }
+
+    /**
+     * @return <code>true</code> if the bytes read and written are limited at this
+     *         time of the day
+     */
+    public boolean isLimitingBytes() {
+        this.refresh();
+        return this.bytes.isLimited();
+    }
+
+    /**
+     * Method to wait until some files may be scanned or copied
+     *
+     * @param n the number of files
+     */
+    public void acquireFiles(long n) {
+        this.acquire(this.files, n);
+    }
+
+    /**
+     * Method to wait until a bucket has enough tokens, and take them
+     *
+     * @param bucket the bucket
+     * @param n      the number of tokens
+     */
+    private void acquire(Bucket bucket, long n) {
+        while (n > 0) {
+            this.refresh();
+            long wait = bucket.take(n);
+
+            if (wait == 0) {
+                return;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, MAX_WAIT_NANOS));
+            }
+
+            // the backup is being stopped, and is not held back any more
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to look up the limits for the time of the day, at most once a second,
+     * reading the settings file again if it changed
+     */
+    private synchronized void refresh() {
+        long now = System.nanoTime();
+
+        if (now - this.refreshed < REFRESH_NANOS) {
+            return;
+        }
+
+        this.refreshed = now;
+
+        Settings settings = Settings.getInstance();
+        settings.reload();
+
+        String schedule = settings.get("throttle.schedule");
+
+        if (!schedule.equals(this.schedule)) {
+            this.schedule = schedule;
+            this.windows = this.parse(schedule);
+        }
+
+        long bytesPerSecond = settings.getLong("throttle.bytesPerSecond");
+        long filesPerSecond = settings.getLong("throttle.filesPerSecond");
+        LocalTime time = LocalTime.now();
+
+        for (Window w : this.windows) {
+            if (w.contains(time)) {
+                bytesPerSecond = w.bytesPerSecond;
+                filesPerSecond = w.filesPerSecond;
+                break;
+            }
+        }
+
+        boolean changed = this.bytes.setRate(bytesPerSecond) | this.files.setRate(filesPerSecond);
+
+        if (changed) {
+            this.appIO.printf("%n%n[%s] %s", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                    describe(bytesPerSecond, filesPerSecond));
+        }
+    }
+
+    /**
+     * @param bytesPerSecond the limit of bytes, 0 for none
+     * @param filesPerSecond the limit of files, 0 for none
+     * @return the limits as a sentence
+     */
+    private static String describe(long bytesPerSecond, long filesPerSecond) {
+        if (bytesPerSecond <= 0 && filesPerSecond <= 0) {
+            return "The backup is not throttled";
+        }
+
+        return String.format("The backup is throttled to %s a second and %s files a second",
+                bytesPerSecond > 0 ? FileDetails.humanReadableSize(bytesPerSecond) : "any bytes",
+                filesPerSecond > 0 ? Long.toString(filesPerSecond) : "any");
+    }
+
+    /**
+     * Method to read a schedule of the form "HH:MM-HH:MM=bytes/files", with the
+     * windows separated by commas. A window that cannot be understood is left out
+     *
+     * @param schedule the schedule
+     * @return the windows of the schedule
+     */
+    private List<Window> parse(String schedule) {
+        List<Window> windows = new ArrayList<>();
+
+        for (String part : schedule.split(",")) {
+            part = part.trim();
+
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            try {
+                String[] window = part.split("=");
+                String[] times = window[0].split("-");
+                String[] limits = window[1].split("/");
+
+                windows.add(new Window(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()),
+                        Long.parseLong(limits[0].trim()), Long.parseLong(limits[1].trim())));
+            }
+
+            catch (RuntimeException e) {
+                this.appIO.printf("%n%n[%s] \"%s\" in throttle.schedule is not of the form "
+                        + "\"HH:MM-HH:MM=bytes/files\", and is left out", ColorText.text("FAIL", Color.BRIGHT_RED),
+                        part);
+            }
+        }
+
+        return windows;
+    }
+
+    /**
+     * The limits of some hours of the day
+     */
+    private static class Window {
+        private final LocalTime from;
+        private final LocalTime to;
+        private final long bytesPerSecond;
+        private final long filesPerSecond;
+
+        /**
+         * @param from           the start of the window
+         * @param to             the end of the window, before from if it ends the
+         *                       next day
+         * @param bytesPerSecond the limit of bytes, 0 for none
+         * @param filesPerSecond the limit of files, 0 for none
+         */
+        private Window(LocalTime from, LocalTime to, long bytesPerSecond, long filesPerSecond) {
+            this.from = from;
+            this.to = to;
+            this.bytesPerSecond = bytesPerSecond;
+            this.filesPerSecond = filesPerSecond;
+        }
+
+        /**
+         * @param time the time of the day
+         * @return <code>true</code> if the window covers the time
+         */
+        private boolean contains(LocalTime time) {
+            if (this.from.isBefore(this.to)) {
+                return !time.isBefore(this.from) && time.isBefore(this.to);
+            }
+
+            // across midnight
+            return !time.isBefore(this.from) || time.isBefore(this.to);
+        }
+    }
+
+    /**
+     * A token bucket, filled at its rate and holding at most a second of it. A
+     * request larger than the bucket is let through once the bucket is full, and
+     * leaves it in debt, so the requests after it wait for the debt to be paid
+     */
+    private static class Bucket {
+        // the tokens added every second, 0 for no limit
+        private long rate;
+
+        private double tokens;
+        private long filled;
+
+        /**
+         * @param rate the tokens added every second, 0 for no limit
+         * @return <code>true</code> if the rate changed
+         */
+        private synchronized boolean setRate(long rate) {
+            rate = Math.max(rate, 0);
+
+            if (rate == this.rate) {
+                return false;
+            }
+
+            this.rate = rate;
+            this.tokens = Math.min(this.tokens, rate);
+            this.filled = System.nanoTime();
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if the bucket has a rate
+         */
+        private synchronized boolean isLimited() {
+            return this.rate > 0;
+        }
+
+        /**
+         * Method to take tokens, if the bucket has enough of them
+         *
+         * @param n the number of tokens
+         * @return 0 if the tokens were taken, or the nanoseconds until the bucket
+         *         has enough of them
+         */
+        private synchronized long take(long n) {
+            if (this.rate == 0) {
+                return 0;
+            }
+
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.rate, this.tokens + (now - this.filled) * (double) this.rate / 1e9);
+            this.filled = now;
+
+            double needed = Math.min(n, this.rate);
+
+            if (this.tokens >= needed) {
+                this.tokens -= n;
+                return 0;
+            }
+
+            return Math.max(1, (long) ((needed - this.tokens) * 1e9 / this.rate));
+        }
+    }
+}
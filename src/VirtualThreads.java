@@ -0,0 +1,70 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that start a new virtual thread for every task, on the
+ * JDKs that have them. The executor is looked up by reflection, so the
+ * application still builds and runs on older JDKs, where the callers go back
+ * to their pools of platform threads, as with threads.mode=platform.
+ *
+ * Virtual threads are cheap enough to give every directory or file its own,
+ * so the callers bound the work in flight with a semaphore instead of with the
+ * size of a pool
+ *
+ * @author Bhavyai Gupta
+ * @version 1.5.0
+ * @since October 17, 2026
+ */
+public class VirtualThreads {
+    // true once the user has been told that virtual threads are not available
+    private static boolean reported = false;
+
+    /**
+     * Private constructor to restrict instantiating by foreign functions
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Method to check if the settings ask for virtual threads
+     *
+     * @return <code>true</code> if threads.mode is "virtual"
+     */
+    public static boolean isRequested() {
+        return Settings.getInstance().get("threads.mode").equalsIgnoreCase("virtual");
+    }
+
+    /**
+     * Method to create an executor that runs every task on a new virtual thread
+     *
+     * @return the executor, or {@code null} if this JDK has no virtual threads
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+
+        // not there before Java 19, and a preview feature that is off by default
+        // in Java 19 and 20
+        catch (ReflectiveOperationException | RuntimeException e) {
+            report();
+            return null;
+        }
+    }
+
+    /**
+     * Method to tell the user, once, that the work is done by pools of threads
+     */
+    private static synchronized void report() {
+        if (reported) {
+            return;
+        }
+
+        reported = true;
+        AppIO.getInstance().printf("%n[%s] Virtual threads are not available on Java %s, scanning and copying "
+                + "with pools of threads as with threads.mode=platform", ColorText.text("INFO", Color.BRIGHT_BLUE),
+                System.getProperty("java.version"));
+    }
+}